@@ -0,0 +1,56 @@
+package org.sbolbin.crpt.benchmark;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Runs the benchmarks once per thread count and writes all the results into a single JSON file,
+ * so the runs can be compared over time.
+ * <p>
+ * Usage: java -Dthreads=1,4,8 -Dresult=results/run.json -jar target/benchmarks.jar [JMH options]
+ * <ul>
+ *     <li>threads - the thread counts, "1,4,8" by default</li>
+ *     <li>result - the JSON file, results/jmh-yyyyMMdd-HHmmss.json by default</li>
+ * </ul>
+ * Any standard JMH option (e.g. the benchmark regexp, -p cacheSize=1024, -wi 1) is passed through.
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_THREADS = "1,4,8";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        List<RunResult> results = new ArrayList<>();
+        for (String threads : System.getProperty("threads", DEFAULT_THREADS).split(",")) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .build();
+            results.addAll(new Runner(options).run());
+        }
+
+        Path result = Paths.get(System.getProperty("result", defaultResultFile()));
+        if (result.getParent() != null) {
+            Files.createDirectories(result.getParent());
+        }
+        ResultFormatFactory.getInstance(ResultFormatType.JSON, result.toString()).writeOut(results);
+        System.out.println("Results written to " + result.toAbsolutePath());
+    }
+
+    private static String defaultResultFile() {
+        return "results/jmh-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json";
+    }
+}
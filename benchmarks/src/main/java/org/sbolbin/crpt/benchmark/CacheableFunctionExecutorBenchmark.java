@@ -0,0 +1,97 @@
+package org.sbolbin.crpt.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sbolbin.crpt.concurrent.CacheableFunctionExecutor;
+import org.sbolbin.crpt.concurrent.EvictionPolicy;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Hit path of CacheableFunctionExecutor#calculate compared to ConcurrentHashMap#computeIfAbsent.
+ * <p>
+ * The benchmarks request keys of a prepopulated key space that fits into the cache. The calculation runs
+ * in the calling thread, so only the cost of the cache itself is measured, not the hand-off to an executor.
+ * The miss path is measured by CacheableFunctionExecutorMissBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheableFunctionExecutorBenchmark {
+
+    private static final int KEYS = 1 << 20;
+    private static final int MASK = KEYS - 1;
+    private static final Function<Integer, Integer> FUNCTION = key -> key;
+
+    /**
+     * UNBOUNDED is the cache of the default constructor, LRU and W_TINY_LFU are bounded by cacheSize
+     */
+    @Param({"UNBOUNDED", "LRU", "W_TINY_LFU"})
+    public String cache;
+
+    @Param({"1024", "65536"})
+    public int cacheSize;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    private CacheableFunctionExecutor<Integer, Integer> executor;
+    private ConcurrentHashMap<Integer, Integer> map;
+    private Integer[] hitKeys;
+
+    @State(Scope.Thread)
+    public static class Index {
+        int next = ThreadLocalRandom.current().nextInt(KEYS);
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        executor = "UNBOUNDED".equals(cache)
+                ? new CacheableFunctionExecutor<>(Runnable::run, cacheSize)
+                : CacheableFunctionExecutor.<Integer, Integer>builder()
+                        .executor(Runnable::run)
+                        .maximumSize(cacheSize)
+                        .evictionPolicy(EvictionPolicy.valueOf(cache))
+                        .build();
+        map = new ConcurrentHashMap<>(cacheSize);
+        hitKeys = box(distribution.generate(KEYS, cacheSize, 42));
+
+        for (int key = 0; key < cacheSize; key++) {
+            executor.calculate(key, FUNCTION).get();
+            map.put(key, key);
+        }
+    }
+
+    @Benchmark
+    public Integer calculate_hit(Index index) throws Exception {
+        return executor.calculate(hitKeys[index.next++ & MASK], FUNCTION).get();
+    }
+
+    @Benchmark
+    public Integer computeIfAbsent_hit(Index index) {
+        return map.computeIfAbsent(hitKeys[index.next++ & MASK], FUNCTION);
+    }
+
+    static Integer[] box(int[] keys) {
+        Integer[] boxed = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            boxed[i] = keys[i];
+        }
+        return boxed;
+    }
+}
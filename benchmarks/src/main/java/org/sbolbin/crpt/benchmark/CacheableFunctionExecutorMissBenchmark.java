@@ -0,0 +1,77 @@
+package org.sbolbin.crpt.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sbolbin.crpt.concurrent.CacheableFunctionExecutor;
+import org.sbolbin.crpt.concurrent.EvictionPolicy;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Miss path of CacheableFunctionExecutor#calculate.
+ * <p>
+ * The benchmark requests keys of a key space 16 times larger than the cache, so the cache evicts and calculates
+ * again (how often depends on the distribution and the eviction policy). Only the bounded caches are measured:
+ * an unbounded cache or a ConcurrentHashMap keeps every key, so after the first pass over the key space
+ * they would measure hits only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheableFunctionExecutorMissBenchmark {
+
+    private static final int KEYS = 1 << 20;
+    private static final int MASK = KEYS - 1;
+    private static final int KEY_SPACE_FACTOR = 16;
+    private static final Function<Integer, Integer> FUNCTION = key -> key;
+
+    @Param({"LRU", "W_TINY_LFU"})
+    public EvictionPolicy cache;
+
+    @Param({"1024", "65536"})
+    public int cacheSize;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    private CacheableFunctionExecutor<Integer, Integer> executor;
+    private Integer[] keys;
+
+    @State(Scope.Thread)
+    public static class Index {
+        int next = ThreadLocalRandom.current().nextInt(KEYS);
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        executor = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .maximumSize(cacheSize)
+                .evictionPolicy(cache)
+                .build();
+        keys = CacheableFunctionExecutorBenchmark.box(distribution.generate(KEYS, cacheSize * KEY_SPACE_FACTOR, 42));
+
+        for (int key = 0; key < cacheSize; key++) {
+            executor.calculate(key, FUNCTION).get();
+        }
+    }
+
+    @Benchmark
+    public Integer calculate_miss(Index index) throws Exception {
+        return executor.calculate(keys[index.next++ & MASK], FUNCTION).get();
+    }
+}
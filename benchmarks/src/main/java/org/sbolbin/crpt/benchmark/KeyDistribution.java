@@ -0,0 +1,88 @@
+package org.sbolbin.crpt.benchmark;
+
+import java.util.Random;
+
+/**
+ * The distribution of the keys requested by the benchmarks
+ */
+public enum KeyDistribution {
+
+    /**
+     * Every key of the key space is equally likely
+     */
+    UNIFORM {
+        @Override
+        int[] generate(int count, int keySpace, long seed) {
+            Random random = new Random(seed);
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = random.nextInt(keySpace);
+            }
+            return keys;
+        }
+    },
+
+    /**
+     * Zipf's law with the exponent 0.99 (as in YCSB): a few keys are very hot, the tail is long
+     */
+    ZIPFIAN {
+        @Override
+        int[] generate(int count, int keySpace, long seed) {
+            Random random = new Random(seed);
+            ZipfianGenerator generator = new ZipfianGenerator(keySpace, ZIPFIAN_CONSTANT);
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = generator.next(random);
+            }
+            return keys;
+        }
+    };
+
+    private static final double ZIPFIAN_CONSTANT = 0.99d;
+
+    /**
+     * @param count - the number of keys to generate
+     * @param keySpace - the keys are in the range [0, keySpace)
+     * @param seed - the seed of the random generator, so the runs are reproducible
+     */
+    abstract int[] generate(int count, int keySpace, long seed);
+
+    /**
+     * The generator of Gray et al., "Quickly Generating Billion-Record Synthetic Databases"
+     */
+    private static final class ZipfianGenerator {
+        private final int items;
+        private final double theta;
+        private final double zetan;
+        private final double alpha;
+        private final double eta;
+
+        ZipfianGenerator(int items, double theta) {
+            this.items = items;
+            this.theta = theta;
+            this.zetan = zeta(items, theta);
+            this.alpha = 1.0d / (1.0d - theta);
+            this.eta = (1 - Math.pow(2.0d / items, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+        }
+
+        int next(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1.0d) {
+                return 0;
+            }
+            if (uz < 1.0d + Math.pow(0.5d, theta)) {
+                return 1;
+            }
+            return Math.min(items - 1, (int) (items * Math.pow(eta * u - eta + 1, alpha)));
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.sbolbin.crpt.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sbolbin.crpt.domain.Order;
+import org.sbolbin.crpt.domain.OrderStatus;
+import org.sbolbin.crpt.domain.Product;
+import org.sbolbin.crpt.json.InterningModule;
+import org.sbolbin.crpt.service.BatchOrderProcessor;
+import org.sbolbin.crpt.validation.OrderValidator;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POST /v1/orders/batch without HTTP: parsing and parallel validation of a batch of orders,
+ * the score is the number of orders per second for the given number of validation workers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBatchBenchmark {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private ForkJoinPool pool;
+    private BatchOrderProcessor processor;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws Exception {
+        LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+        validator.afterPropertiesSet();
+        pool = new ForkJoinPool(parallelism);
+        processor = new BatchOrderProcessor(new OrderValidator(validator), new InterningModule(65536), pool,
+                BATCH_SIZE);
+
+        List<Order> orders = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            List<Product> products = new ArrayList<>();
+            for (int p = 0; p < 5; p++) {
+                products.add(new Product(String.format("%013d", i * 5 + p), "product " + p));
+            }
+            // every tenth order is invalid
+            orders.add(new Order(i % 10 == 0 ? "123" : "123456789", "234567890", products));
+        }
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        payload = objectMapper.writeValueAsBytes(orders);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<OrderStatus> batch() throws Exception {
+        return processor.process(new ByteArrayInputStream(payload));
+    }
+}
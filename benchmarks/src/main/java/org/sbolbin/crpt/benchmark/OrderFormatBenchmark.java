@@ -0,0 +1,79 @@
+package org.sbolbin.crpt.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sbolbin.crpt.domain.Order;
+import org.sbolbin.crpt.domain.Product;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The request and response body conversion of POST /v1/order in the supported formats: JSON, Smile and CBOR.
+ * The ObjectMappers are configured the same way as the ones of the Spring MVC message converters.
+ * The payload sizes, in bytes:
+ * <pre>
+ * products    json   smile    cbor
+ *        1     102      89      84
+ *      100    4548    2951    3739
+ *    10000  468948  308951  388940
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderFormatBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int products;
+
+    @Param({"json", "smile", "cbor"})
+    public String format;
+
+    private ObjectMapper objectMapper;
+    private byte[] payload;
+    private Order order;
+
+    @Setup
+    public void setUp() throws Exception {
+        if ("smile".equals(format)) {
+            objectMapper = Jackson2ObjectMapperBuilder.smile().build();
+        } else if ("cbor".equals(format)) {
+            objectMapper = Jackson2ObjectMapperBuilder.cbor().build();
+        } else {
+            objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        }
+
+        List<Product> productList = new ArrayList<>(products);
+        for (int i = 0; i < products; i++) {
+            productList.add(new Product(String.format("%013d", i), "product " + i));
+        }
+        order = new Order("123456789", "234567890", productList);
+        payload = objectMapper.writeValueAsBytes(order);
+    }
+
+    @Benchmark
+    public Order deserialize() throws Exception {
+        return objectMapper.readValue(payload, Order.class);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(order);
+    }
+}
@@ -0,0 +1,88 @@
+package org.sbolbin.crpt.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sbolbin.crpt.domain.Order;
+import org.sbolbin.crpt.domain.Product;
+import org.sbolbin.crpt.validation.OrderValidator;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.Validator;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The request body processing of POST /v1/order: Jackson deserialization and validation of the Order,
+ * separately and together, for orders of 1 to 10 000 products.
+ * The validator is either the hand-written OrderValidator ("compiled") or Bean Validation ("bean").
+ * The ObjectMapper is configured the same way as the one of the Spring MVC message converter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderPayloadBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int products;
+
+    @Param({"compiled", "bean"})
+    public String validation;
+
+    private ObjectMapper objectMapper;
+    private Validator validator;
+    private byte[] payload;
+    private Order order;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        LocalValidatorFactoryBean beanValidator = new LocalValidatorFactoryBean();
+        beanValidator.afterPropertiesSet();
+        validator = "bean".equals(validation) ? beanValidator : new OrderValidator(beanValidator);
+
+        List<Product> productList = new ArrayList<>(products);
+        for (int i = 0; i < products; i++) {
+            productList.add(new Product(String.format("%013d", i), "product " + i));
+        }
+        order = new Order("123456789", "234567890", productList);
+        payload = objectMapper.writeValueAsBytes(order);
+    }
+
+    @Benchmark
+    public Order deserialize() throws Exception {
+        return objectMapper.readValue(payload, Order.class);
+    }
+
+    @Benchmark
+    public BindingResult validate() {
+        return validate(order);
+    }
+
+    @Benchmark
+    public BindingResult deserializeAndValidate() throws Exception {
+        return validate(objectMapper.readValue(payload, Order.class));
+    }
+
+    private BindingResult validate(Order target) {
+        BindingResult errors = new BeanPropertyBindingResult(target, "order");
+        validator.validate(target, errors);
+        return errors;
+    }
+}
@@ -0,0 +1,64 @@
+package org.sbolbin.crpt.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sbolbin.crpt.domain.Order;
+import org.sbolbin.crpt.domain.Product;
+import org.sbolbin.crpt.json.InterningModule;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The deserialization of the orders whose products come from a catalog of 1000 products, with and without
+ * the interning of the product codes and names (see InterningModule, capacity 0 disables it).
+ * Run with "-prof gc" to compare the allocation rate (gc.alloc.rate.norm is the bytes per order).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductInterningBenchmark {
+
+    private static final int CATALOG_SIZE = 1000;
+
+    @Param({"10", "1000"})
+    public int products;
+
+    @Param({"0", "65536"})
+    public int internCapacity;
+
+    private ObjectMapper objectMapper;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(new InterningModule(internCapacity)).build();
+
+        List<Product> productList = new ArrayList<>(products);
+        for (int i = 0; i < products; i++) {
+            int catalogIndex = (i * 7919) % CATALOG_SIZE;
+            productList.add(new Product(String.format("%013d", catalogIndex), "product " + catalogIndex));
+        }
+        payload = objectMapper.writeValueAsBytes(new Order("123456789", "234567890", productList));
+    }
+
+    @Benchmark
+    public Order deserialize() throws Exception {
+        return objectMapper.readValue(payload, Order.class);
+    }
+}
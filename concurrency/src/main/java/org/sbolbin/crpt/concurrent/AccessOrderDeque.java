@@ -0,0 +1,64 @@
+package org.sbolbin.crpt.concurrent;
+
+/**
+ * Intrusive doubly-linked deque of cache nodes ordered from the least to the most recently used.
+ * Not thread safe, must be accessed under the eviction lock.
+ */
+final class AccessOrderDeque<K, V> {
+
+    private Node<K, V> first;
+    private Node<K, V> last;
+
+    Node<K, V> peekFirst() {
+        return first;
+    }
+
+    Node<K, V> peekLast() {
+        return last;
+    }
+
+    boolean contains(Node<K, V> node) {
+        return node.deque == this;
+    }
+
+    void addLast(Node<K, V> node) {
+        node.deque = this;
+        node.prev = last;
+        node.next = null;
+        if (last == null) {
+            first = node;
+        } else {
+            last.next = node;
+        }
+        last = node;
+    }
+
+    void moveToLast(Node<K, V> node) {
+        if (node != last) {
+            unlink(node);
+            addLast(node);
+        }
+    }
+
+    void remove(Node<K, V> node) {
+        unlink(node);
+        node.deque = null;
+    }
+
+    private void unlink(Node<K, V> node) {
+        Node<K, V> prev = node.prev;
+        Node<K, V> next = node.next;
+        if (prev == null) {
+            first = next;
+        } else {
+            prev.next = next;
+        }
+        if (next == null) {
+            last = prev;
+        } else {
+            next.prev = prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+}
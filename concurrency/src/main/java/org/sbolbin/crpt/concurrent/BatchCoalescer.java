@@ -0,0 +1,108 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Merges the misses of concurrent bulk calls into batches per batch function instance.
+ * The batch is dispatched when it reaches the batch size or when the window passes since its first miss,
+ * whichever comes first.
+ */
+final class BatchCoalescer<K, V> {
+
+    private final ConcurrentHashMap<Function<Set<K>, Map<K, V>>, PendingBatch<K, V>> pending =
+            new ConcurrentHashMap<>();
+    private final int batchSize;
+    private final long windowNanos;
+    private final BiConsumer<Function<Set<K>, Map<K, V>>, List<Node<K, V>>> dispatcher;
+
+    BatchCoalescer(int batchSize, long windowNanos,
+                   BiConsumer<Function<Set<K>, Map<K, V>>, List<Node<K, V>>> dispatcher) {
+        this.batchSize = batchSize;
+        this.windowNanos = windowNanos;
+        this.dispatcher = dispatcher;
+    }
+
+    void enqueue(Function<Set<K>, Map<K, V>> batchFunction, List<Node<K, V>> nodes) {
+        int index = 0;
+        while (index < nodes.size()) {
+            PendingBatch<K, V> batch = pending.get(batchFunction);
+            if (batch == null) {
+                PendingBatch<K, V> created = new PendingBatch<>(batchFunction);
+                batch = pending.putIfAbsent(batchFunction, created);
+                if (batch == null) {
+                    batch = created;
+                    if (!schedule(created)) {
+                        // no timer - dispatch what is collected and the rest of the misses right away
+                        flush(created);
+                        dispatcher.accept(batchFunction, nodes.subList(index, nodes.size()));
+                        return;
+                    }
+                }
+            }
+
+            List<Node<K, V>> full = null;
+            synchronized (batch) {
+                if (batch.closed) {
+                    continue; // dispatched concurrently, start a new batch
+                }
+                while (index < nodes.size() && batch.nodes.size() < batchSize) {
+                    batch.nodes.add(nodes.get(index++));
+                }
+                if (batch.nodes.size() >= batchSize) {
+                    full = close(batch);
+                }
+            }
+            if (full != null) {
+                dispatcher.accept(batchFunction, full);
+            }
+        }
+    }
+
+    private boolean schedule(PendingBatch<K, V> batch) {
+        try {
+            Scheduler.schedule(() -> flush(batch), windowNanos, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (Throwable rejected) {
+            return false;
+        }
+    }
+
+    private void flush(PendingBatch<K, V> batch) {
+        List<Node<K, V>> nodes;
+        synchronized (batch) {
+            if (batch.closed) {
+                return;
+            }
+            nodes = close(batch);
+        }
+        if (!nodes.isEmpty()) {
+            dispatcher.accept(batch.function, nodes);
+        }
+    }
+
+    /**
+     * Must be called holding the monitor of the batch
+     */
+    private List<Node<K, V>> close(PendingBatch<K, V> batch) {
+        batch.closed = true;
+        pending.remove(batch.function, batch);
+        return batch.nodes;
+    }
+
+    private static final class PendingBatch<K, V> {
+        final Function<Set<K>, Map<K, V>> function;
+        final List<Node<K, V>> nodes = new ArrayList<>();
+        boolean closed;
+
+        PendingBatch(Function<Set<K>, Map<K, V>> function) {
+            this.function = function;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Applies the cache events to the eviction and expiration policies without locking the read path.
+ * Reads are recorded into a lossy striped buffer, writes into an unbounded queue of tasks; both are replayed
+ * against the policy by whichever thread manages to acquire the eviction lock (see {@link #drain()}).
+ * <p>
+ * Expired entries are swept lazily during the maintenance: only the heads of the write-order (of the values and
+ * of the kept failures) and access-order deques are inspected, so the cost is proportional to the number
+ * of expired entries, not to the size of the cache.
+ */
+final class BoundedPolicy<K, V> {
+
+    static final long NEVER = -1;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ReadBuffer<Node<K, V>> readBuffer = new ReadBuffer<>();
+    private final Queue<Runnable> writeBuffer = new ConcurrentLinkedQueue<>();
+    private final WriteOrderDeque<K, V> writeOrderDeque = new WriteOrderDeque<>();
+    // the failures kept for a while (see Builder#expireFailuresAfter), a node is never in both write-order deques
+    private final WriteOrderDeque<K, V> failureOrderDeque = new WriteOrderDeque<>();
+    private final Eviction<K, V> eviction;
+    private final Consumer<Node<K, V>> removalListener;
+
+    private final Ticker ticker;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+    private final long expireFailuresAfterNanos;
+
+    /**
+     * @param maximum - the maximum size or weight, Long.MAX_VALUE if the cache is bounded by time only
+     * @param expireAfterWriteNanos - time to live since the value is written, or NEVER
+     * @param expireAfterAccessNanos - time to live since the last access, or NEVER
+     * @param expireFailuresAfterNanos - time to live of a failed entry, or NEVER if it is removed at once
+     * @param removalListener - removes the evicted or expired node from the cache map
+     */
+    BoundedPolicy(EvictionPolicy evictionPolicy, long maximum, Ticker ticker,
+                  long expireAfterWriteNanos, long expireAfterAccessNanos, long expireFailuresAfterNanos,
+                  Consumer<Node<K, V>> removalListener) {
+        this.eviction = Eviction.create(evictionPolicy, maximum, this::onEvicted);
+        this.ticker = ticker;
+        this.expireAfterWriteNanos = expireAfterWriteNanos;
+        this.expireAfterAccessNanos = expireAfterAccessNanos;
+        this.expireFailuresAfterNanos = expireFailuresAfterNanos;
+        this.removalListener = removalListener;
+    }
+
+    boolean expiresAfterAccess() {
+        return expireAfterAccessNanos != NEVER;
+    }
+
+    /**
+     * The entry being calculated never expires, the time to live starts once the value is written.
+     * The failed entry expires on its own time to live.
+     */
+    boolean isExpired(Node<K, V> node, long now) {
+        CompletableFuture<V> future = node.future;
+        if (!future.isDone()) {
+            return false;
+        }
+        if (future.isCompletedExceptionally()) {
+            return expireFailuresAfterNanos == NEVER || now - node.writeTime >= expireFailuresAfterNanos;
+        }
+        return (expireAfterWriteNanos != NEVER && now - node.writeTime >= expireAfterWriteNanos)
+                || (expireAfterAccessNanos != NEVER && now - node.accessTime >= expireAfterAccessNanos);
+    }
+
+    /**
+     * @return true if the value written at the given time is expired (see Builder#expireAfterWrite)
+     */
+    boolean isExpiredAfterWrite(long writeTime, long now) {
+        return expireAfterWriteNanos != NEVER && now - writeTime >= expireAfterWriteNanos;
+    }
+
+    void afterRead(Node<K, V> node) {
+        if (readBuffer.offer(node) == ReadBuffer.FULL) {
+            drain();
+        }
+    }
+
+    void afterAdd(Node<K, V> node) {
+        afterWrite(() -> eviction.onAdd(node));
+    }
+
+    /**
+     * Called once the value of the node is written (calculated, refreshed or promoted)
+     */
+    void afterValueWritten(Node<K, V> node) {
+        if (expireAfterWriteNanos == NEVER) {
+            return;
+        }
+        afterWrite(() -> {
+            if (node.retired) {
+                return;
+            }
+            if (writeOrderDeque.contains(node)) {
+                writeOrderDeque.reorder(node);
+            } else {
+                writeOrderDeque.add(node);
+            }
+        });
+    }
+
+    /**
+     * Called once the failure of the node is kept instead of being removed
+     */
+    void afterFailure(Node<K, V> node) {
+        afterWrite(() -> {
+            if (!node.retired) {
+                failureOrderDeque.add(node);
+            }
+        });
+    }
+
+    void afterUpdate(Node<K, V> node, int weight) {
+        afterWrite(() -> eviction.onUpdate(node, weight));
+    }
+
+    void afterRemove(Node<K, V> node) {
+        afterWrite(() -> {
+            eviction.onRemove(node);
+            removeFromWriteOrder(node);
+        });
+    }
+
+    /**
+     * Performs the pending maintenance, waiting for the eviction lock
+     */
+    void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void afterWrite(Runnable task) {
+        writeBuffer.add(task);
+        drain();
+    }
+
+    /**
+     * Tries to perform the maintenance; if the lock is busy the current owner will pick up the pending tasks,
+     * since it re-checks the write buffer after releasing the lock.
+     */
+    private void drain() {
+        do {
+            if (!evictionLock.tryLock()) {
+                return;
+            }
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        } while (!writeBuffer.isEmpty());
+    }
+
+    private void maintenance() {
+        readBuffer.drainTo(eviction::onAccess);
+        Runnable task;
+        while ((task = writeBuffer.poll()) != null) {
+            task.run();
+        }
+        expireEntries();
+    }
+
+    private void expireEntries() {
+        if (expireAfterWriteNanos == NEVER && expireAfterAccessNanos == NEVER && expireFailuresAfterNanos == NEVER) {
+            return;
+        }
+        long now = ticker.read();
+        expireHeads(writeOrderDeque, now);
+        expireHeads(failureOrderDeque, now);
+        if (expireAfterAccessNanos != NEVER) {
+            eviction.expire(expired -> isExpired(expired, now));
+        }
+    }
+
+    private void expireHeads(WriteOrderDeque<K, V> deque, long now) {
+        Node<K, V> node;
+        while ((node = deque.peekFirst()) != null && isExpired(node, now)) {
+            eviction.onRemove(node);
+            onEvicted(node);
+        }
+    }
+
+    private void onEvicted(Node<K, V> node) {
+        removeFromWriteOrder(node);
+        removalListener.accept(node);
+    }
+
+    private void removeFromWriteOrder(Node<K, V> node) {
+        WriteOrderDeque<K, V> deque = node.future.isCompletedExceptionally() ? failureOrderDeque : writeOrderDeque;
+        if (deque.contains(node)) {
+            deque.remove(node);
+        }
+    }
+}
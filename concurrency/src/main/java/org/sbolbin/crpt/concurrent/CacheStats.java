@@ -0,0 +1,117 @@
+package org.sbolbin.crpt.concurrent;
+
+/**
+ * The immutable snapshot of the statistics of CacheableFunctionExecutor
+ * (see CacheableFunctionExecutor.Builder#recordStats).
+ * <ul>
+ *     <li>hit - the call found the key in the heap tier of the cache (calculated or being calculated)</li>
+ *     <li>secondary hit - the call found the value of the key in the secondary tier and promoted it to the heap</li>
+ *     <li>miss - the call found the key in neither tier and started the calculation of the key</li>
+ *     <li>load - a single call of the calculation function (including retries, refreshes and batches)</li>
+ *     <li>eviction - the entry removed from the heap by the size, weight or time bound</li>
+ *     <li>demotion - the evicted value written into the secondary tier</li>
+ * </ul>
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+    private final long secondaryHitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long evictionCount;
+    private final long demotionCount;
+    private final long inFlightCount;
+    private final LatencySnapshot computeTime;
+    private final LatencySnapshot queueDelay;
+
+    CacheStats(long hitCount, long secondaryHitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+               long evictionCount, long demotionCount, long inFlightCount,
+               LatencySnapshot computeTime, LatencySnapshot queueDelay) {
+        this.hitCount = hitCount;
+        this.secondaryHitCount = secondaryHitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.evictionCount = evictionCount;
+        this.demotionCount = demotionCount;
+        this.inFlightCount = inFlightCount;
+        this.computeTime = computeTime;
+        this.queueDelay = queueDelay;
+    }
+
+    public long hitCount() {
+        return hitCount;
+    }
+
+    public long secondaryHitCount() {
+        return secondaryHitCount;
+    }
+
+    public long missCount() {
+        return missCount;
+    }
+
+    public long requestCount() {
+        return hitCount + secondaryHitCount + missCount;
+    }
+
+    /**
+     * @return the ratio of hits of both tiers to requests, 1.0 if there were no requests
+     */
+    public double hitRate() {
+        long requestCount = requestCount();
+        return requestCount == 0 ? 1.0d : (double) (hitCount + secondaryHitCount) / requestCount;
+    }
+
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    public long demotionCount() {
+        return demotionCount;
+    }
+
+    /**
+     * @return the number of calculations started and not completed yet (the value of the moment of the snapshot)
+     */
+    public long inFlightCount() {
+        return inFlightCount;
+    }
+
+    /**
+     * @return the time spent in the calculation function, per call
+     */
+    public LatencySnapshot computeTime() {
+        return computeTime;
+    }
+
+    /**
+     * @return the time the calculation spent queued on the executor before it started
+     */
+    public LatencySnapshot queueDelay() {
+        return queueDelay;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount
+                + ", secondaryHitCount=" + secondaryHitCount
+                + ", missCount=" + missCount
+                + ", loadSuccessCount=" + loadSuccessCount
+                + ", loadFailureCount=" + loadFailureCount
+                + ", evictionCount=" + evictionCount
+                + ", demotionCount=" + demotionCount
+                + ", inFlightCount=" + inFlightCount
+                + ", computeTime=" + computeTime
+                + ", queueDelay=" + queueDelay + '}';
+    }
+}
@@ -0,0 +1,103 @@
+package org.sbolbin.crpt.concurrent;
+
+/**
+ * The registered MXBean of CacheableFunctionExecutor
+ */
+final class CacheStatsBean implements CacheStatsMXBean {
+
+    private final CacheableFunctionExecutor<?, ?> executor;
+
+    CacheStatsBean(CacheableFunctionExecutor<?, ?> executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        return executor.estimatedSize();
+    }
+
+    @Override
+    public long getHitCount() {
+        return executor.stats().hitCount();
+    }
+
+    @Override
+    public long getSecondaryHitCount() {
+        return executor.stats().secondaryHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return executor.stats().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return executor.stats().hitRate();
+    }
+
+    @Override
+    public long getLoadSuccessCount() {
+        return executor.stats().loadSuccessCount();
+    }
+
+    @Override
+    public long getLoadFailureCount() {
+        return executor.stats().loadFailureCount();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return executor.stats().evictionCount();
+    }
+
+    @Override
+    public long getDemotionCount() {
+        return executor.stats().demotionCount();
+    }
+
+    @Override
+    public long getInFlightCount() {
+        return executor.stats().inFlightCount();
+    }
+
+    @Override
+    public double getComputeTimeMeanNanos() {
+        return executor.stats().computeTime().meanNanos();
+    }
+
+    @Override
+    public long getComputeTimeP50Nanos() {
+        return executor.stats().computeTime().percentileNanos(50);
+    }
+
+    @Override
+    public long getComputeTimeP99Nanos() {
+        return executor.stats().computeTime().percentileNanos(99);
+    }
+
+    @Override
+    public long getComputeTimeMaxNanos() {
+        return executor.stats().computeTime().maxNanos();
+    }
+
+    @Override
+    public double getQueueDelayMeanNanos() {
+        return executor.stats().queueDelay().meanNanos();
+    }
+
+    @Override
+    public long getQueueDelayP50Nanos() {
+        return executor.stats().queueDelay().percentileNanos(50);
+    }
+
+    @Override
+    public long getQueueDelayP99Nanos() {
+        return executor.stats().queueDelay().percentileNanos(99);
+    }
+
+    @Override
+    public long getQueueDelayMaxNanos() {
+        return executor.stats().queueDelay().maxNanos();
+    }
+}
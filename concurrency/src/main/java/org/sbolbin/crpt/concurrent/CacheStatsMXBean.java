@@ -0,0 +1,44 @@
+package org.sbolbin.crpt.concurrent;
+
+/**
+ * The JMX view of the statistics of CacheableFunctionExecutor (see CacheableFunctionExecutor#registerMBean).
+ * Every attribute is read from a fresh snapshot.
+ */
+public interface CacheStatsMXBean {
+
+    long getEstimatedSize();
+
+    long getHitCount();
+
+    long getSecondaryHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadSuccessCount();
+
+    long getLoadFailureCount();
+
+    long getEvictionCount();
+
+    long getDemotionCount();
+
+    long getInFlightCount();
+
+    double getComputeTimeMeanNanos();
+
+    long getComputeTimeP50Nanos();
+
+    long getComputeTimeP99Nanos();
+
+    long getComputeTimeMaxNanos();
+
+    double getQueueDelayMeanNanos();
+
+    long getQueueDelayP50Nanos();
+
+    long getQueueDelayP99Nanos();
+
+    long getQueueDelayMaxNanos();
+}
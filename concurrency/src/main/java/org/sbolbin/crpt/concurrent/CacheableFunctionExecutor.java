@@ -1,19 +1,63 @@
 package org.sbolbin.crpt.concurrent;
 
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 
-public class CacheableFunctionExecutor<K, V> {
+public class CacheableFunctionExecutor<K, V> implements AutoCloseable {
 
     private static final int DEFAULT_INITIAL_CAPACITY = 16;
     private static final Executor DEFAULT_EXECUTOR = ForkJoinPool.commonPool();
+    private static final int UNLIMITED_BATCH_SIZE = Integer.MAX_VALUE;
+    private static final long UNBOUNDED = -1;
+    private static final long NEVER = BoundedPolicy.NEVER;
 
-    private final ConcurrentHashMap<K, Future<V>> cache;
+    private final ConcurrentHashMap<K, Node<K, V>> cache;
     private final Executor executor;
+    private final KeyAffineExecutor keyAffineExecutor;
+    private final Weigher<? super K, ? super V> weigher;
+    private final BoundedPolicy<K, V> policy;
+    private final Ticker ticker;
+    private final long refreshAfterWriteNanos;
+    private final long expireFailuresAfterNanos;
+    private final RetryPolicy retryPolicy;
+    private final int batchSize;
+    private final BatchCoalescer<K, V> batchCoalescer;
+    private final StatsCounter stats;
+    private final SnapshotStore<K, V> snapshot;
+    private final SecondaryTier<K, V> secondaryTier;
+    private final Queue<Node<K, V>> evicted = new ConcurrentLinkedQueue<>(); // awaiting the demotion
+    private final AtomicBoolean demotionScheduled = new AtomicBoolean();
+    private final ReentrantLock demotionLock = new ReentrantLock();
+    private final ThreadPoolExecutor demoter;
 
     /**
      * Default constructor,
@@ -35,6 +79,72 @@ public class CacheableFunctionExecutor<K, V> {
     public CacheableFunctionExecutor(Executor executor, int cacheCapacity) {
         this.cache = new ConcurrentHashMap<>(cacheCapacity);
         this.executor = executor;
+        this.keyAffineExecutor = null;
+        this.weigher = null;
+        this.policy = null;
+        this.ticker = null;
+        this.refreshAfterWriteNanos = NEVER;
+        this.expireFailuresAfterNanos = NEVER;
+        this.retryPolicy = null;
+        this.batchSize = UNLIMITED_BATCH_SIZE;
+        this.batchCoalescer = null;
+        this.stats = StatsCounter.disabled();
+        this.snapshot = null;
+        this.secondaryTier = null;
+        this.demoter = null;
+    }
+
+    private CacheableFunctionExecutor(Builder<K, V> builder) {
+        this.cache = new ConcurrentHashMap<>(builder.initialCapacity);
+        this.executor = builder.executor;
+        this.keyAffineExecutor = builder.executor instanceof KeyAffineExecutor
+                ? (KeyAffineExecutor) builder.executor
+                : null;
+        this.weigher = builder.weigher;
+        this.ticker = builder.ticker;
+        this.refreshAfterWriteNanos = builder.refreshAfterWriteNanos;
+        this.expireFailuresAfterNanos = builder.expireFailuresAfterNanos;
+        this.retryPolicy = builder.retryPolicy;
+        this.batchSize = builder.batchSize;
+        this.batchCoalescer = builder.batchWindowNanos == NEVER ? null
+                : new BatchCoalescer<>(builder.batchSize, builder.batchWindowNanos, this::submitBatch);
+        this.stats = builder.recordStats
+                ? new ConcurrentStatsCounter(builder.ticker == null ? Ticker.systemTicker() : builder.ticker)
+                : StatsCounter.disabled();
+        if (builder.maximum == UNBOUNDED) {
+            this.policy = null;
+        } else {
+            this.policy = new BoundedPolicy<>(builder.evictionPolicy, builder.maximum, builder.ticker,
+                    builder.expireAfterWriteNanos, builder.expireAfterAccessNanos, builder.expireFailuresAfterNanos,
+                    this::onRemoval);
+        }
+        if (builder.secondaryTierCapacity == 0) {
+            this.secondaryTier = null;
+            this.demoter = null;
+        } else if (builder.secondaryTierFile == null) {
+            this.secondaryTier = SecondaryTier.offHeap((int) builder.secondaryTierCapacity,
+                    builder.secondaryTierKeyCodec, builder.secondaryTierValueCodec);
+            this.demoter = demoter();
+        } else {
+            this.secondaryTier = SecondaryTier.inFile(builder.secondaryTierFile, builder.secondaryTierCapacity,
+                    builder.secondaryTierKeyCodec, builder.secondaryTierValueCodec);
+            this.demoter = demoter();
+        }
+        if (builder.snapshotFile == null) {
+            this.snapshot = null;
+        } else {
+            this.snapshot = new SnapshotStore<>(builder.snapshotFile, builder.snapshotKeyCodec,
+                    builder.snapshotValueCodec, builder.snapshotIntervalNanos,
+                    builder.ticker, builder.expireAfterWriteNanos);
+            this.snapshot.start(cache);
+        }
+    }
+
+    /**
+     * @return the builder of the executor, that allows to bound the cache by size, weight or time
+     */
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
     }
 
     /**
@@ -42,6 +152,11 @@ public class CacheableFunctionExecutor<K, V> {
      * its value using the given function.
      * If value is already present in the cache, the cached value will be returned
      * (event the given function differs from the function that was used before).
+     * If the cache is bounded, an entry may be evicted after the call and calculated again later.
+     * An expired entry is calculated again; an entry due for refresh is returned as is,
+     * while the new value is calculated in background.
+     * If the calculation fails or the future is cancelled, the entry is removed from the cache
+     * (or kept for the configured time, see Builder#expireFailuresAfter), so the next call calculates it again.
      *
      * @param key the argument of the function, acts as a key in the cache
      * @param function the calculation function
@@ -50,7 +165,891 @@ public class CacheableFunctionExecutor<K, V> {
      * @throws NullPointerException if the key is null
      */
     public Future<V> calculate(K key, Function<K, V> function) {
-        return cache.computeIfAbsent(key,
-                (k) -> CompletableFuture.supplyAsync(() -> function.apply(k), executor));
+        long now = 0;
+        Node<K, V> node;
+        if (policy == null) {
+            node = cache.get(key);
+        } else {
+            now = ticker == null ? 0 : ticker.read();
+            node = getIfPresent(key, function, now);
+        }
+        if (node != null) {
+            stats.recordHits(1);
+            return node.future;
+        }
+        return putIfAbsent(key, function, now).future;
+    }
+
+    /**
+     * The bulk version of {@link #calculate(Object, Function)}.
+     * The futures of the keys present in the cache are returned as is, the missing keys are calculated
+     * by the batch function: the misses are split into batches of the configured size (see Builder#batchSize),
+     * each batch is a single call of the function on the executor.
+     * If the batching window is configured (see Builder#batchWindow), the misses of concurrent callers passing
+     * the same function instance are merged into a single batch.
+     * The key missing in the map returned by the function completes exceptionally with NoSuchElementException.
+     *
+     * @param keys the arguments of the function, act as keys in the cache
+     * @param batchFunction the calculation function of a set of keys
+     * @return the futures of the keys, in the iteration order of the given keys
+     *
+     * @throws NullPointerException if any key is null
+     */
+    public Map<K, Future<V>> calculateAll(Collection<? extends K> keys, Function<Set<K>, Map<K, V>> batchFunction) {
+        long now = ticker == null ? 0 : ticker.read();
+        Function<K, V> refreshFunction = policy == null ? null : singleKeyFunction(batchFunction);
+        Map<K, Future<V>> result = new LinkedHashMap<>((int) (keys.size() / 0.75f) + 1);
+        List<Node<K, V>> misses = new ArrayList<>();
+        int created = 0;
+        int promoted = 0;
+        for (K key : keys) {
+            Node<K, V> node = policy == null ? cache.get(key) : getIfPresent(key, refreshFunction, now);
+            if (node == null) {
+                Node<K, V> miss = newNode(key, now);
+                node = cache.putIfAbsent(key, miss);
+                if (node == null) {
+                    created++;
+                    afterCreate(miss);
+                    if (completeFromSecondaryTier(miss, now)) {
+                        promoted++;
+                    } else if (!completeFromSnapshot(miss)) {
+                        misses.add(miss);
+                    }
+                    node = miss;
+                } else if (policy != null) {
+                    policy.afterRead(node);
+                }
+            }
+            result.put(key, node.future);
+        }
+        stats.recordHits(result.size() - created);
+        stats.recordSecondaryHits(promoted);
+        stats.recordMisses(created - promoted);
+        if (!misses.isEmpty()) {
+            if (batchCoalescer != null) {
+                batchCoalescer.enqueue(batchFunction, misses);
+            } else {
+                for (int from = 0; from < misses.size(); from += batchSize) {
+                    submitBatch(batchFunction, misses.subList(from, Math.min(misses.size(), from + batchSize)));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the approximate number of entries in the cache
+     */
+    public long estimatedSize() {
+        return cache.size();
+    }
+
+    /**
+     * @return the snapshot of the statistics, all zeros unless the executor records them (see Builder#recordStats)
+     */
+    public CacheStats stats() {
+        return stats.snapshot();
+    }
+
+    /**
+     * Registers the statistics of the executor (see {@link CacheStatsMXBean}) in the platform MBean server
+     * under the name "org.sbolbin.crpt.concurrent:type=CacheableFunctionExecutor,name=&lt;name&gt;"
+     *
+     * @param name - the name of the executor, unique within the JVM
+     * @return the object name, to unregister the bean once the executor is not used anymore
+     *
+     * @throws IllegalArgumentException if the name is not a valid value of the object name key property
+     * @throws IllegalStateException if the bean is already registered
+     */
+    public ObjectName registerMBean(String name) {
+        ObjectName objectName;
+        try {
+            objectName = new ObjectName("org.sbolbin.crpt.concurrent:type=CacheableFunctionExecutor,name=" + name);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Invalid name: " + name, e);
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new CacheStatsBean(this), objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + objectName, e);
+        }
+        return objectName;
+    }
+
+    /**
+     * Writes the completed entries into the snapshot file right away (e.g. before the shutdown),
+     * in the calling thread; the calculate callers are not blocked
+     *
+     * @throws IllegalStateException if the snapshot is not configured (see Builder#snapshot)
+     * @throws UncheckedIOException if the snapshot cannot be written, the previous one is kept then
+     */
+    public void writeSnapshot() {
+        if (snapshot == null) {
+            throw new IllegalStateException("The snapshot is not configured");
+        }
+        try {
+            snapshot.write(cache);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stops the background work of the executor: the periodic snapshot writes stop (the last snapshot is kept,
+     * see {@link #writeSnapshot()} to write the current entries before), the loaded snapshot is released,
+     * the secondary tier is dropped and its file is deleted.
+     * The calculations are not affected.
+     */
+    @Override
+    public void close() {
+        if (snapshot != null) {
+            snapshot.close();
+        }
+        if (secondaryTier != null) {
+            demoter.shutdown();
+            demotionLock.lock();
+            try {
+                evicted.clear();
+                secondaryTier.close();
+            } finally {
+                demotionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Performs the pending maintenance of the bounded cache (eviction and demotion into the secondary tier)
+     * in the calling thread. The maintenance runs automatically on cache access, so there is no need to call
+     * this method except in tests or to free the memory immediately.
+     */
+    public void cleanUp() {
+        if (policy != null) {
+            policy.cleanUp();
+        }
+        if (secondaryTier != null) {
+            demoteEvicted();
+        }
+    }
+
+    /**
+     * @return the live node of the bounded cache, or null if the key is absent or expired
+     */
+    private Node<K, V> getIfPresent(K key, Function<K, V> function, long now) {
+        Node<K, V> node = cache.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (policy.isExpired(node, now)) {
+            remove(node);
+            return null;
+        }
+        afterRead(node, function, now);
+        return node;
+    }
+
+    /**
+     * @return the node present in the cache, or the created one whose calculation is started
+     */
+    private Node<K, V> putIfAbsent(K key, Function<K, V> function, long now) {
+        Node<K, V> created = newNode(key, now);
+        Node<K, V> existing = cache.putIfAbsent(key, created);
+        if (existing != null) {
+            if (policy != null) {
+                policy.afterRead(existing);
+            }
+            stats.recordHits(1);
+            return existing;
+        }
+        afterCreate(created);
+        if (completeFromSecondaryTier(created, now)) {
+            stats.recordSecondaryHits(1);
+            return created;
+        }
+        stats.recordMisses(1);
+        if (!completeFromSnapshot(created)) {
+            submit(created, () -> attempt(created, function, 1));
+        }
+        return created;
+    }
+
+    /**
+     * @return true if the value of the created node is promoted from the secondary tier
+     */
+    private boolean completeFromSecondaryTier(Node<K, V> node, long now) {
+        if (secondaryTier == null) {
+            return false;
+        }
+        SecondaryTier.Entry<V> entry = secondaryTier.take(node.key);
+        return entry != null && !policy.isExpiredAfterWrite(entry.writeTime, now) && completePromoted(node, entry);
+    }
+
+    /**
+     * @return true if the value of the created node is found in the snapshot loaded at startup
+     */
+    private boolean completeFromSnapshot(Node<K, V> node) {
+        if (snapshot == null) {
+            return false;
+        }
+        SecondaryTier.Entry<V> entry = snapshot.lookup(node.key);
+        return entry != null && completePromoted(node, entry);
+    }
+
+    /**
+     * Completes the node with the value that keeps its age
+     */
+    private boolean completePromoted(Node<K, V> node, SecondaryTier.Entry<V> entry) {
+        node.writeTime = entry.writeTime;
+        node.promoted = true;
+        return node.future.complete(entry.value);
+    }
+
+    private Node<K, V> newNode(K key, long now) {
+        return new Node<>(key, new CompletableFuture<>(), weigher == null ? 1 : 0, now);
+    }
+
+    private void afterCreate(Node<K, V> node) {
+        if (policy != null) {
+            policy.afterAdd(node);
+        }
+        stats.calculationStarted();
+        node.future.whenComplete((value, error) -> {
+            stats.calculationFinished();
+            if (error != null) {
+                afterFailure(node, error);
+            } else if (policy != null) {
+                afterValueWritten(node, value, node.promoted);
+            }
+        });
+    }
+
+    private void submit(Node<K, V> node, Runnable task) {
+        try {
+            execute(node.key, task);
+        } catch (Throwable error) {
+            fail(node, error);
+        }
+    }
+
+    /**
+     * Runs the calculation of the key, on the stripe of the key if the executor is key-affine
+     */
+    private void execute(K key, Runnable task) {
+        Runnable measured = stats.measureQueueDelay(task);
+        if (keyAffineExecutor != null) {
+            keyAffineExecutor.execute(key, measured);
+        } else {
+            executor.execute(measured);
+        }
+    }
+
+    private void attempt(Node<K, V> node, Function<K, V> function, int attempt) {
+        if (node.future.isDone()) {
+            return; // cancelled while queued
+        }
+        long start = stats.ticks();
+        try {
+            V value = function.apply(node.key);
+            stats.recordLoadSuccess(stats.ticks() - start);
+            node.future.complete(value);
+        } catch (Throwable error) {
+            stats.recordLoadFailure(stats.ticks() - start);
+            if (retryPolicy != null && retryPolicy.shouldRetry(attempt, error) && !node.future.isDone()) {
+                try {
+                    Scheduler.schedule(() -> submit(node, () -> attempt(node, function, attempt + 1)),
+                            retryPolicy.backoffNanos(attempt), TimeUnit.NANOSECONDS);
+                    return;
+                } catch (Throwable rejected) {
+                    // the timer is not available - fail with the original error
+                }
+            }
+            fail(node, error);
+        }
+    }
+
+    private void submitBatch(Function<Set<K>, Map<K, V>> batchFunction, List<Node<K, V>> batch) {
+        submitBatch(batchFunction, batch, 1);
+    }
+
+    private void attemptBatch(Function<Set<K>, Map<K, V>> batchFunction, List<Node<K, V>> batch, int attempt) {
+        Set<K> keys = new HashSet<>((int) (batch.size() / 0.75f) + 1);
+        for (Node<K, V> node : batch) {
+            if (!node.future.isDone()) {
+                keys.add(node.key);
+            }
+        }
+        if (keys.isEmpty()) {
+            return; // all cancelled while queued
+        }
+        long start = stats.ticks();
+        try {
+            Map<K, V> values = batchFunction.apply(Collections.unmodifiableSet(keys));
+            stats.recordLoadSuccess(stats.ticks() - start);
+            for (Node<K, V> node : batch) {
+                if (values.containsKey(node.key)) {
+                    node.future.complete(values.get(node.key));
+                } else {
+                    fail(node, new NoSuchElementException("The batch function returned no value for the key"));
+                }
+            }
+        } catch (Throwable error) {
+            stats.recordLoadFailure(stats.ticks() - start);
+            if (retryPolicy != null && retryPolicy.shouldRetry(attempt, error)) {
+                try {
+                    Scheduler.schedule(() -> submitBatch(batchFunction, batch, attempt + 1),
+                            retryPolicy.backoffNanos(attempt), TimeUnit.NANOSECONDS);
+                    return;
+                } catch (Throwable rejected) {
+                    // the timer is not available - fail with the original error
+                }
+            }
+            for (Node<K, V> node : batch) {
+                fail(node, error);
+            }
+        }
+    }
+
+    private void submitBatch(Function<Set<K>, Map<K, V>> batchFunction, List<Node<K, V>> batch, int attempt) {
+        try {
+            executor.execute(stats.measureQueueDelay(() -> attemptBatch(batchFunction, batch, attempt)));
+        } catch (Throwable error) {
+            for (Node<K, V> node : batch) {
+                fail(node, error);
+            }
+        }
+    }
+
+    private static <K, V> Function<K, V> singleKeyFunction(Function<Set<K>, Map<K, V>> batchFunction) {
+        return key -> {
+            Map<K, V> values = batchFunction.apply(Collections.singleton(key));
+            if (!values.containsKey(key)) {
+                throw new NoSuchElementException("The batch function returned no value for the key");
+            }
+            return values.get(key);
+        };
+    }
+
+    private void fail(Node<K, V> node, Throwable error) {
+        if (ticker != null) {
+            node.writeTime = ticker.read();
+        }
+        node.future.completeExceptionally(error);
+    }
+
+    /**
+     * The failed or cancelled entry is removed, unless the failures are cached for a while
+     */
+    private void afterFailure(Node<K, V> node, Throwable error) {
+        if (expireFailuresAfterNanos == NEVER || error instanceof CancellationException) {
+            remove(node);
+        } else {
+            policy.afterFailure(node);
+        }
+    }
+
+    private void afterRead(Node<K, V> node, Function<K, V> function, long now) {
+        if (policy.expiresAfterAccess()) {
+            node.accessTime = now;
+        }
+        policy.afterRead(node);
+        if (refreshAfterWriteNanos != NEVER && now - node.writeTime >= refreshAfterWriteNanos && node.hasValue()) {
+            refresh(node, function);
+        }
+    }
+
+    /**
+     * Recalculates the value in background, the readers get the old value until the new one is calculated.
+     * If the recalculation fails, the old value is kept and the refresh is retried on the next read.
+     */
+    private void refresh(Node<K, V> node, Function<K, V> function) {
+        if (!node.startRefresh()) {
+            return;
+        }
+        stats.calculationStarted();
+        try {
+            execute(node.key, () -> {
+                long start = stats.ticks();
+                try {
+                    V value = function.apply(node.key);
+                    stats.recordLoadSuccess(stats.ticks() - start);
+                    node.future = CompletableFuture.completedFuture(value);
+                    afterValueWritten(node, value, false);
+                } catch (Throwable ignore) {
+                    stats.recordLoadFailure(stats.ticks() - start);
+                    // keep the old value
+                } finally {
+                    stats.calculationFinished();
+                    node.endRefresh();
+                }
+            });
+        } catch (Throwable ignore) {
+            stats.calculationFinished();
+            node.endRefresh();
+        }
+    }
+
+    /**
+     * @param promoted - the value is taken from the snapshot or the secondary tier, its write time is already set
+     */
+    private void afterValueWritten(Node<K, V> node, V value, boolean promoted) {
+        if (ticker != null && !promoted) {
+            node.writeTime = ticker.read();
+        }
+        policy.afterValueWritten(node);
+        if (weigher != null) {
+            policy.afterUpdate(node, weigher.weigh(node.key, value));
+        }
+    }
+
+    private void remove(Node<K, V> node) {
+        if (cache.remove(node.key, node)) {
+            node.retired = true;
+            if (policy != null) {
+                policy.afterRemove(node);
+            }
+        }
+    }
+
+    /**
+     * Called under the eviction lock, so the evicted node is only queued for the demotion in background
+     */
+    private void onRemoval(Node<K, V> node) {
+        node.retired = true;
+        if (cache.remove(node.key, node)) {
+            stats.recordEviction();
+            if (secondaryTier != null) {
+                evicted.add(node);
+                scheduleDemotion();
+            }
+        }
+    }
+
+    private void scheduleDemotion() {
+        if (!demotionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            demoter.execute(() -> {
+                demotionScheduled.set(false);
+                demoteEvicted();
+            });
+        } catch (RejectedExecutionException ignore) {
+            // closed
+        }
+    }
+
+    /**
+     * Demotes the queued evicted nodes in the calling thread
+     */
+    private void demoteEvicted() {
+        demotionLock.lock();
+        try {
+            Node<K, V> node;
+            while ((node = evicted.poll()) != null) {
+                demote(node);
+            }
+        } finally {
+            demotionLock.unlock();
+        }
+    }
+
+    /**
+     * Moves the value evicted from the heap into the secondary tier, unless it is expired
+     */
+    private void demote(Node<K, V> node) {
+        if (!node.hasValue() || policy.isExpired(node, ticker == null ? 0 : ticker.read())) {
+            return;
+        }
+        V value = node.future.getNow(null);
+        try {
+            if (value != null && secondaryTier.put(node.key, value, node.writeTime)) {
+                stats.recordDemotion();
+            }
+        } catch (RuntimeException ignore) {
+            // the codec failed - the value is dropped
+        }
+    }
+
+    private static ThreadPoolExecutor demoter() {
+        ThreadPoolExecutor demoter = new ThreadPoolExecutor(1, 1, CalculationExecutors.KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), CalculationExecutors.daemonThreads("demotion-"));
+        demoter.allowCoreThreadTimeOut(true);
+        return demoter;
+    }
+
+    /**
+     * The builder of CacheableFunctionExecutor.
+     * By default the cache is unbounded, the calculation is performed by the common executor
+     * (see java.util.concurrent.ForkJoinPool#commonPool).
+     */
+    public static final class Builder<K, V> {
+        private Executor executor = DEFAULT_EXECUTOR;
+        private int initialCapacity = DEFAULT_INITIAL_CAPACITY;
+        private long maximum = UNBOUNDED;
+        private Weigher<? super K, ? super V> weigher;
+        private EvictionPolicy evictionPolicy = EvictionPolicy.W_TINY_LFU;
+        private Ticker ticker;
+        private long expireAfterWriteNanos = NEVER;
+        private long expireAfterAccessNanos = NEVER;
+        private long refreshAfterWriteNanos = NEVER;
+        private long expireFailuresAfterNanos = NEVER;
+        private RetryPolicy retryPolicy;
+        private int batchSize = UNLIMITED_BATCH_SIZE;
+        private long batchWindowNanos = NEVER;
+        private boolean recordStats;
+        private Path snapshotFile;
+        private SnapshotCodec<K> snapshotKeyCodec;
+        private SnapshotCodec<V> snapshotValueCodec;
+        private long snapshotIntervalNanos;
+        private Path secondaryTierFile;
+        private long secondaryTierCapacity;
+        private SnapshotCodec<K> secondaryTierKeyCodec;
+        private SnapshotCodec<V> secondaryTierValueCodec;
+
+        private Builder() {
+        }
+
+        /**
+         * @param executor - executor service that will be used for the calculation
+         */
+        public Builder<K, V> executor(Executor executor) {
+            if (executor == null) {
+                throw new NullPointerException("executor");
+            }
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Runs each calculation in its own virtual thread (Java 21+), suits the functions blocking on I/O:
+         * they neither starve the common pool nor are limited by the number of platform threads.
+         * On older Java versions falls back to a pool of platform threads growing with the number
+         * of concurrent calculations (the idle threads are reused and exit after a minute).
+         */
+        public Builder<K, V> virtualThreadExecutor() {
+            this.executor = CalculationExecutors.virtualThreadPerTask();
+            return this;
+        }
+
+        /**
+         * Runs the calculations in a fixed number of threads with a bounded queue, so a burst of misses
+         * does not pile up unbounded work. The threads are daemon ones and exit when idle.
+         *
+         * @param threads - the maximum number of concurrent calculations
+         * @param queueCapacity - the number of calculations waiting for a thread, 0 for a direct hand-off
+         * @param saturationPolicy - whether to reject the calculation or to make the caller wait
+         *                         when the threads are busy and the queue is full
+         */
+        public Builder<K, V> boundedExecutor(int threads, int queueCapacity, SaturationPolicy saturationPolicy) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be positive");
+            }
+            if (queueCapacity < 0) {
+                throw new IllegalArgumentException("queueCapacity must not be negative");
+            }
+            if (saturationPolicy == null) {
+                throw new NullPointerException("saturationPolicy");
+            }
+            this.executor = CalculationExecutors.bounded(threads, queueCapacity, saturationPolicy);
+            return this;
+        }
+
+        /**
+         * Runs the calculations in single-thread stripes chosen by the hash of the key: all the calculations
+         * (retries, refreshes) of a key run on the same worker, so its data stays in the worker's CPU caches.
+         * The bulk calculations run on an arbitrary stripe.
+         * A calculation must not wait for the result of another key of this executor, it may be on the same stripe.
+         *
+         * @param stripes - the number of worker threads
+         */
+        public Builder<K, V> keyAffineExecutor(int stripes) {
+            if (stripes < 1) {
+                throw new IllegalArgumentException("stripes must be positive");
+            }
+            this.executor = new KeyAffineExecutor(stripes);
+            return this;
+        }
+
+        /**
+         * @param initialCapacity - the initial capacity of the underlying java.util.concurrent.ConcurrentHashMap
+         */
+        public Builder<K, V> initialCapacity(int initialCapacity) {
+            if (initialCapacity < 0) {
+                throw new IllegalArgumentException("initialCapacity must not be negative");
+            }
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        /**
+         * Bounds the cache by the number of entries. Entries being calculated are counted too.
+         *
+         * @param maximumSize - the maximum number of entries, the cache may exceed it temporarily
+         *                    until the eviction catches up
+         */
+        public Builder<K, V> maximumSize(long maximumSize) {
+            if (maximumSize < 0) {
+                throw new IllegalArgumentException("maximumSize must not be negative");
+            }
+            if (weigher != null) {
+                throw new IllegalStateException("maximumWeight is already set");
+            }
+            this.maximum = maximumSize;
+            return this;
+        }
+
+        /**
+         * Bounds the cache by the total weight of entries. The entry is weighed once its value is calculated,
+         * entries being calculated weigh nothing.
+         *
+         * @param maximumWeight - the maximum total weight, the cache may exceed it temporarily
+         *                      until the eviction catches up
+         * @param weigher - calculates the weight of an entry
+         */
+        public Builder<K, V> maximumWeight(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+            if (maximumWeight < 0) {
+                throw new IllegalArgumentException("maximumWeight must not be negative");
+            }
+            if (weigher == null) {
+                throw new NullPointerException("weigher");
+            }
+            if (maximum != UNBOUNDED && this.weigher == null) {
+                throw new IllegalStateException("maximumSize is already set");
+            }
+            this.maximum = maximumWeight;
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * @param evictionPolicy - the policy that chooses the entries to evict (W_TINY_LFU by default)
+         */
+        public Builder<K, V> evictionPolicy(EvictionPolicy evictionPolicy) {
+            if (evictionPolicy == null) {
+                throw new NullPointerException("evictionPolicy");
+            }
+            this.evictionPolicy = evictionPolicy;
+            return this;
+        }
+
+        /**
+         * The entry expires once the given time passed since its value was calculated,
+         * the next call calculates the value again
+         *
+         * @param duration - the time to live of the entry
+         * @param unit - the unit of the duration
+         */
+        public Builder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+            this.expireAfterWriteNanos = toNanos(duration, unit);
+            return this;
+        }
+
+        /**
+         * The entry expires once the given time passed since its last access (or calculation),
+         * the next call calculates the value again
+         *
+         * @param duration - the time to live of the entry since the last access
+         * @param unit - the unit of the duration
+         */
+        public Builder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
+            this.expireAfterAccessNanos = toNanos(duration, unit);
+            return this;
+        }
+
+        /**
+         * The first call after the given time passed since the value was calculated triggers a single
+         * background recalculation on the executor; meanwhile all the callers get the old value.
+         * Should be shorter than the expiration time, otherwise the entry expires before it is refreshed.
+         *
+         * @param duration - the time since the value was calculated
+         * @param unit - the unit of the duration
+         */
+        public Builder<K, V> refreshAfterWrite(long duration, TimeUnit unit) {
+            this.refreshAfterWriteNanos = toNanos(duration, unit);
+            return this;
+        }
+
+        /**
+         * By default a failed entry is removed from the cache as soon as its future completes exceptionally.
+         * This option keeps the failure cached for the given time (negative caching),
+         * so that a failing key does not hammer the downstream on every call.
+         *
+         * @param duration - the time to keep the failed entry
+         * @param unit - the unit of the duration
+         */
+        public Builder<K, V> expireFailuresAfter(long duration, TimeUnit unit) {
+            this.expireFailuresAfterNanos = toNanos(duration, unit);
+            return this;
+        }
+
+        /**
+         * @param retryPolicy - retries the failed calculation before the future is completed exceptionally
+         */
+        public Builder<K, V> retry(RetryPolicy retryPolicy) {
+            if (retryPolicy == null) {
+                throw new NullPointerException("retryPolicy");
+            }
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * @param batchSize - the maximum number of keys passed to a single call of the batch function
+         *                  (see CacheableFunctionExecutor#calculateAll), unlimited by default
+         */
+        public Builder<K, V> batchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be positive");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Enables micro-batching: the misses of CacheableFunctionExecutor#calculateAll are collected for the given
+         * time (or until the batch size is reached) and merged with the misses of other callers passing
+         * the same batch function instance, so the downstream gets fewer, larger requests at the cost of the latency.
+         *
+         * @param duration - the time to wait for other misses, starting from the first miss of the batch
+         * @param unit - the unit of the duration
+         */
+        public Builder<K, V> batchWindow(long duration, TimeUnit unit) {
+            this.batchWindowNanos = toNanos(duration, unit);
+            return this;
+        }
+
+        /**
+         * @param ticker - the source of time for the expiration and refresh (java.lang.System#nanoTime by default)
+         */
+        public Builder<K, V> ticker(Ticker ticker) {
+            if (ticker == null) {
+                throw new NullPointerException("ticker");
+            }
+            this.ticker = ticker;
+            return this;
+        }
+
+        /**
+         * Enables the statistics of the executor: hits, misses, loads, evictions, calculations in flight,
+         * the histograms of the calculation time and of the time spent queued on the executor
+         * (see CacheableFunctionExecutor#stats and CacheableFunctionExecutor#registerMBean).
+         * The statistics are disabled by default, then the recording costs next to nothing.
+         */
+        public Builder<K, V> recordStats() {
+            this.recordStats = true;
+            return this;
+        }
+
+        /**
+         * Enables the warm start: the completed entries are periodically written into the snapshot file
+         * in background, and the snapshot found at startup serves the misses of its keys instead of
+         * the calculation. The snapshot is memory-mapped and read lazily, key by key, so the startup is not blocked;
+         * each loaded entry serves a single miss. The entries keep their write time across the restart,
+         * so the time to live (see {@link #expireAfterWrite(long, TimeUnit)}) counts from the original calculation
+         * and the expired entries are not loaded. The entries of the loaded snapshot that are not requested yet
+         * are carried over into the next snapshots.
+         *
+         * @param file - the snapshot file, its directory must exist
+         * @param keyCodec - serializes the keys
+         * @param valueCodec - serializes the values, the null values are not written
+         * @param interval - the time between the snapshots
+         * @param unit - the unit of the interval
+         */
+        public Builder<K, V> snapshot(Path file, SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec,
+                                      long interval, TimeUnit unit) {
+            if (file == null) {
+                throw new NullPointerException("file");
+            }
+            if (keyCodec == null) {
+                throw new NullPointerException("keyCodec");
+            }
+            if (valueCodec == null) {
+                throw new NullPointerException("valueCodec");
+            }
+            if (interval <= 0) {
+                throw new IllegalArgumentException("interval must be positive");
+            }
+            this.snapshotFile = file;
+            this.snapshotKeyCodec = keyCodec;
+            this.snapshotValueCodec = valueCodec;
+            this.snapshotIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        /**
+         * Adds the off-heap secondary tier to the bounded cache: the values evicted from the heap (not expired ones)
+         * are serialized into the off-heap memory by a background thread, the next miss of the key promotes
+         * the value back to the heap instead of calculating it, the value keeps its write time.
+         * Once the memory is full, the oldest values are overwritten.
+         * The key is calculated only if it is missing in both tiers.
+         *
+         * @param capacityBytes - the size of the off-heap memory
+         * @param keyCodec - serializes the keys
+         * @param valueCodec - serializes the values, the null values are not demoted
+         */
+        public Builder<K, V> offHeapSecondaryTier(int capacityBytes,
+                                                  SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec) {
+            return secondaryTier(null, capacityBytes, keyCodec, valueCodec);
+        }
+
+        /**
+         * The same as {@link #offHeapSecondaryTier(int, SnapshotCodec, SnapshotCodec)},
+         * but the values are written into the local file, which is deleted when the executor is closed
+         * (see {@link CacheableFunctionExecutor#close()}) or the JVM exits.
+         * The promotion reads the file in the calling thread.
+         *
+         * @param file - the file of the tier, replaced if exists
+         * @param capacityBytes - the maximum size of the file
+         * @param keyCodec - serializes the keys
+         * @param valueCodec - serializes the values, the null values are not demoted
+         */
+        public Builder<K, V> fileSecondaryTier(Path file, long capacityBytes,
+                                               SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec) {
+            if (file == null) {
+                throw new NullPointerException("file");
+            }
+            return secondaryTier(file, capacityBytes, keyCodec, valueCodec);
+        }
+
+        public CacheableFunctionExecutor<K, V> build() {
+            if (secondaryTierCapacity != 0 && maximum == UNBOUNDED) {
+                throw new IllegalStateException("The secondary tier requires maximumSize or maximumWeight");
+            }
+            boolean timed = expireAfterWriteNanos != NEVER || expireAfterAccessNanos != NEVER
+                    || refreshAfterWriteNanos != NEVER || expireFailuresAfterNanos != NEVER;
+            if (ticker == null && timed) {
+                ticker = Ticker.systemTicker();
+            }
+            if (timed && maximum == UNBOUNDED) {
+                // bounded by time only: LRU keeps the access order, the maximum is never reached
+                maximum = Long.MAX_VALUE;
+                evictionPolicy = EvictionPolicy.LRU;
+            }
+            return new CacheableFunctionExecutor<>(this);
+        }
+
+        private Builder<K, V> secondaryTier(Path file, long capacityBytes,
+                                            SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec) {
+            if (capacityBytes <= 0) {
+                throw new IllegalArgumentException("capacityBytes must be positive");
+            }
+            if (keyCodec == null) {
+                throw new NullPointerException("keyCodec");
+            }
+            if (valueCodec == null) {
+                throw new NullPointerException("valueCodec");
+            }
+            this.secondaryTierFile = file;
+            this.secondaryTierCapacity = capacityBytes;
+            this.secondaryTierKeyCodec = keyCodec;
+            this.secondaryTierValueCodec = valueCodec;
+            return this;
+        }
+
+        private static long toNanos(long duration, TimeUnit unit) {
+            if (duration < 0) {
+                throw new IllegalArgumentException("duration must not be negative");
+            }
+            return unit.toNanos(duration);
+        }
     }
 }
@@ -0,0 +1,87 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The built-in executors of the calculations (see CacheableFunctionExecutor.Builder).
+ * The threads are daemon ones and exit when idle, so the executors need no shutdown.
+ */
+public final class CalculationExecutors {
+
+    static final long KEEP_ALIVE_SECONDS = 60;
+
+    private CalculationExecutors() {
+    }
+
+    /**
+     * @return the new virtual thread per task executor (see java.util.concurrent.Executors),
+     * or empty before Java 21
+     */
+    public static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return Optional.of((ExecutorService) factory.invoke(null));
+        } catch (ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return the virtual thread per task executor on Java 21+, otherwise the cached pool of platform threads
+     * (a thread per concurrent task, the idle threads are reused)
+     */
+    static Executor virtualThreadPerTask() {
+        return newVirtualThreadPerTaskExecutor()
+                .orElseGet(() -> Executors.newCachedThreadPool(daemonThreads("calculation-")));
+    }
+
+    static Executor bounded(int threads, int queueCapacity, SaturationPolicy saturationPolicy) {
+        BlockingQueue<Runnable> queue = queueCapacity == 0
+                ? new SynchronousQueue<>()
+                : new ArrayBlockingQueue<>(queueCapacity);
+        RejectedExecutionHandler handler = saturationPolicy == SaturationPolicy.WAIT
+                ? CalculationExecutors::waitForRoom
+                : new ThreadPoolExecutor.AbortPolicy();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                queue, daemonThreads("bounded-calculation-"), handler);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "cacheable-function-executor-" + prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static void waitForRoom(Runnable task, ThreadPoolExecutor pool) {
+        if (pool.isShutdown() || Scheduler.isTimerThread()) {
+            throw new RejectedExecutionException("The calculation pool is saturated");
+        }
+        try {
+            pool.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the calculation pool", e);
+        }
+        if (pool.getPoolSize() == 0) {
+            pool.prestartCoreThread(); // all the workers timed out meanwhile
+        }
+    }
+}
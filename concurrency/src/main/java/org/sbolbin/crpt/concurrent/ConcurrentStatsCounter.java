@@ -0,0 +1,94 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The statistics counter based on LongAdder: the counters are striped, so the concurrent hits
+ * do not contend on a single cache line
+ */
+final class ConcurrentStatsCounter implements StatsCounter {
+
+    private final Ticker ticker;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder secondaryHitCount = new LongAdder();
+    private final LongAdder demotionCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder inFlightCount = new LongAdder();
+    private final LatencyHistogram computeTime = new LatencyHistogram();
+    private final LatencyHistogram queueDelay = new LatencyHistogram();
+
+    ConcurrentStatsCounter(Ticker ticker) {
+        this.ticker = ticker;
+    }
+
+    @Override
+    public void recordHits(int count) {
+        hitCount.add(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        missCount.add(count);
+    }
+
+    @Override
+    public void recordSecondaryHits(int count) {
+        secondaryHitCount.add(count);
+    }
+
+    @Override
+    public void recordDemotion() {
+        demotionCount.increment();
+    }
+
+    @Override
+    public void recordLoadSuccess(long computeNanos) {
+        loadSuccessCount.increment();
+        computeTime.record(computeNanos);
+    }
+
+    @Override
+    public void recordLoadFailure(long computeNanos) {
+        loadFailureCount.increment();
+        computeTime.record(computeNanos);
+    }
+
+    @Override
+    public void recordEviction() {
+        evictionCount.increment();
+    }
+
+    @Override
+    public void calculationStarted() {
+        inFlightCount.increment();
+    }
+
+    @Override
+    public void calculationFinished() {
+        inFlightCount.decrement();
+    }
+
+    @Override
+    public long ticks() {
+        return ticker.read();
+    }
+
+    @Override
+    public Runnable measureQueueDelay(Runnable task) {
+        long queued = ticker.read();
+        return () -> {
+            queueDelay.record(ticker.read() - queued);
+            task.run();
+        };
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return new CacheStats(hitCount.sum(), secondaryHitCount.sum(), missCount.sum(),
+                loadSuccessCount.sum(), loadFailureCount.sum(), evictionCount.sum(), demotionCount.sum(),
+                Math.max(0, inFlightCount.sum()), computeTime.snapshot(), queueDelay.snapshot());
+    }
+}
@@ -0,0 +1,63 @@
+package org.sbolbin.crpt.concurrent;
+
+/**
+ * The statistics counter of the executor built without Builder#recordStats
+ */
+enum DisabledStatsCounter implements StatsCounter {
+
+    INSTANCE;
+
+    private static final LatencySnapshot EMPTY_LATENCY = new LatencyHistogram().snapshot();
+    private static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, EMPTY_LATENCY, EMPTY_LATENCY);
+
+    @Override
+    public void recordHits(int count) {
+    }
+
+    @Override
+    public void recordMisses(int count) {
+    }
+
+    @Override
+    public void recordSecondaryHits(int count) {
+    }
+
+    @Override
+    public void recordDemotion() {
+    }
+
+    @Override
+    public void recordLoadSuccess(long computeNanos) {
+    }
+
+    @Override
+    public void recordLoadFailure(long computeNanos) {
+    }
+
+    @Override
+    public void recordEviction() {
+    }
+
+    @Override
+    public void calculationStarted() {
+    }
+
+    @Override
+    public void calculationFinished() {
+    }
+
+    @Override
+    public long ticks() {
+        return 0;
+    }
+
+    @Override
+    public Runnable measureQueueDelay(Runnable task) {
+        return task;
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return EMPTY;
+    }
+}
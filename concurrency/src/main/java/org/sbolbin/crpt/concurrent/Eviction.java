@@ -0,0 +1,36 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The eviction policy of a bounded cache. All the methods are called under the eviction lock,
+ * the chosen victims are handed over to the eviction listener.
+ */
+interface Eviction<K, V> {
+
+    void onAccess(Node<K, V> node);
+
+    void onAdd(Node<K, V> node);
+
+    void onUpdate(Node<K, V> node, int weight);
+
+    void onRemove(Node<K, V> node);
+
+    /**
+     * Removes the entries matching the predicate from the heads of the access-order deques
+     * and hands them over to the listener (the lazy sweep of expire-after-access entries)
+     */
+    void expire(Predicate<Node<K, V>> expired);
+
+    static <K, V> Eviction<K, V> create(EvictionPolicy policy, long maximum, Consumer<Node<K, V>> listener) {
+        switch (policy) {
+            case LRU:
+                return new LruEviction<>(maximum, listener);
+            case W_TINY_LFU:
+                return new WindowTinyLfuEviction<>(maximum, listener);
+            default:
+                throw new IllegalArgumentException("Unsupported eviction policy: " + policy);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.sbolbin.crpt.concurrent;
+
+/**
+ * The policy used to choose entries to evict when the bounded cache exceeds its maximum size or weight
+ */
+public enum EvictionPolicy {
+
+    /**
+     * Least recently used entry is evicted
+     */
+    LRU,
+
+    /**
+     * Window TinyLFU: new entries go through a small LRU window, then are admitted into the main
+     * (segmented LRU) space only if their estimated access frequency is higher than the one of the main space victim.
+     * Keeps high hit rates on skewed key distributions and resists scans of one-hit keys.
+     */
+    W_TINY_LFU
+}
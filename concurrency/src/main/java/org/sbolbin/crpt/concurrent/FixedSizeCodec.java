@@ -0,0 +1,30 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Serializes a value into a fixed-size record, allows to keep the calculated values off-heap
+ * (see LongCacheableFunctionExecutor). Implementations must use the absolute get/put methods of the buffer
+ * and must not change its position or limit.
+ */
+public interface FixedSizeCodec<V> {
+
+    /**
+     * @return the size of the record in bytes, the same for every value
+     */
+    int recordSize();
+
+    /**
+     * @param value - the value to write, never null
+     * @param buffer - the target buffer
+     * @param offset - the absolute position of the record in the buffer
+     */
+    void write(V value, ByteBuffer buffer, int offset);
+
+    /**
+     * @param buffer - the source buffer
+     * @param offset - the absolute position of the record in the buffer
+     * @return the value read from the record
+     */
+    V read(ByteBuffer buffer, int offset);
+}
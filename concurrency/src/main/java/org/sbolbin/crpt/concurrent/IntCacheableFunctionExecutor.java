@@ -0,0 +1,61 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * The CacheableFunctionExecutor specialized for primitive int keys,
+ * backed by {@link LongCacheableFunctionExecutor} (the key is widened, the function is passed as is,
+ * so neither the hit nor the miss allocates a wrapper of it).
+ */
+public class IntCacheableFunctionExecutor<V> {
+
+    private final LongCacheableFunctionExecutor<V> delegate;
+
+    /**
+     * Default constructor, the values are kept on-heap,
+     * default common executor will be used for calculation
+     */
+    public IntCacheableFunctionExecutor() {
+        this.delegate = new LongCacheableFunctionExecutor<>();
+    }
+
+    /**
+     * @param executor - executor service that will be used for the calculation
+     * @param cacheCapacity - the initial capacity of the underlying cache
+     */
+    public IntCacheableFunctionExecutor(Executor executor, int cacheCapacity) {
+        this.delegate = new LongCacheableFunctionExecutor<>(executor, cacheCapacity);
+    }
+
+    /**
+     * @param executor - executor service that will be used for the calculation
+     * @param cacheCapacity - the initial capacity of the underlying cache
+     * @param offHeapCodec - serializes the calculated values into off-heap records, null to keep the values on-heap
+     */
+    public IntCacheableFunctionExecutor(Executor executor, int cacheCapacity, FixedSizeCodec<V> offHeapCodec) {
+        this.delegate = new LongCacheableFunctionExecutor<>(executor, cacheCapacity, offHeapCodec);
+    }
+
+    /**
+     * If the specified key is not already present in the cache, attempts to compute
+     * its value using the given function.
+     * If value is already present in the cache, the cached value will be returned
+     * (event the given function differs from the function that was used before).
+     *
+     * @param key the argument of the function, acts as a key in the cache
+     * @param function the calculation function
+     * @return the future represents the result is calculated
+     */
+    public Future<V> calculate(int key, IntFunction<V> function) {
+        return delegate.calculateInt(key, function);
+    }
+
+    /**
+     * @return the number of entries in the cache (both on-heap and off-heap)
+     */
+    public long size() {
+        return delegate.size();
+    }
+}
@@ -0,0 +1,44 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The set of single-thread stripes: the calculations of a key always run on the stripe of its hash,
+ * one after another, so the data of the key stays in the caches of the same worker.
+ * The calculations of different keys of a stripe run sequentially too, so a calculation must not wait
+ * for the calculation of another key of the same executor.
+ */
+final class KeyAffineExecutor implements Executor {
+
+    private final ThreadPoolExecutor[] stripes;
+
+    KeyAffineExecutor(int stripeCount) {
+        stripes = new ThreadPoolExecutor[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ThreadPoolExecutor(1, 1, CalculationExecutors.KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), CalculationExecutors.daemonThreads("key-affine-" + i + "-"));
+            stripes[i].allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * Runs the task on the stripe of the key
+     */
+    void execute(Object key, Runnable task) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        stripes[Math.floorMod(hash, stripes.length)].execute(task);
+    }
+
+    /**
+     * Runs the task not bound to a key (e.g. a batch) on a random stripe
+     */
+    @Override
+    public void execute(Runnable task) {
+        stripes[ThreadLocalRandom.current().nextInt(stripes.length)].execute(task);
+    }
+}
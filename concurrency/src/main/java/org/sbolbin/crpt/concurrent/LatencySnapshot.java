@@ -0,0 +1,84 @@
+package org.sbolbin.crpt.concurrent;
+
+/**
+ * The immutable snapshot of a latency histogram (see CacheStats).
+ * The percentiles are approximate: the value returned is the upper bound of the histogram bucket,
+ * at most 25% greater than the exact one.
+ */
+public final class LatencySnapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+
+    LatencySnapshot(long[] counts, long totalNanos, long maxNanos) {
+        long count = 0;
+        for (long bucketCount : counts) {
+            count += bucketCount;
+        }
+        this.counts = counts;
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * @return the number of recorded durations
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return the sum of recorded durations in nanoseconds
+     */
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the greatest recorded duration in nanoseconds, 0 if nothing is recorded
+     */
+    public long maxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @return the mean duration in nanoseconds, 0 if nothing is recorded
+     */
+    public double meanNanos() {
+        return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    /**
+     * @param percentile - the percentile in the range [0, 100], e.g. 99.9
+     * @return the approximate duration in nanoseconds, 0 if nothing is recorded
+     */
+    public long percentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in the range [0, 100]");
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.upperBoundOf(i), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencySnapshot{count=" + count
+                + ", meanNanos=" + (long) meanNanos()
+                + ", p50Nanos=" + percentileNanos(50)
+                + ", p99Nanos=" + percentileNanos(99)
+                + ", maxNanos=" + maxNanos + '}';
+    }
+}
@@ -0,0 +1,137 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+
+/**
+ * The CacheableFunctionExecutor specialized for primitive long keys.
+ * The cache is an open-addressing table of long keys (see {@link LongFutureTable}): no boxed keys and no map nodes,
+ * the lookup of a present key neither locks nor allocates.
+ * Failed and cancelled calculations are removed from the cache, as in CacheableFunctionExecutor.
+ * <p>
+ * With the off-heap codec, the calculated values are moved into off-heap fixed-size records and only the futures
+ * being calculated stay on-heap; a hit then allocates the decoded value and its completed future.
+ */
+public class LongCacheableFunctionExecutor<V> {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final Executor DEFAULT_EXECUTOR = ForkJoinPool.commonPool();
+
+    private static final KeyFunction<LongFunction<?>> LONG_FUNCTION = LongFunction::apply;
+    private static final KeyFunction<IntFunction<?>> INT_FUNCTION = (function, key) -> function.apply((int) key);
+
+    private final LongFutureTable<V> cache;
+    private final Executor executor;
+    private final boolean offHeap;
+
+    /**
+     * Default constructor, the values are kept on-heap,
+     * default common executor will be used for calculation
+     */
+    public LongCacheableFunctionExecutor() {
+        this(DEFAULT_EXECUTOR, DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param executor - executor service that will be used for the calculation
+     * @param cacheCapacity - the initial capacity of the underlying cache
+     */
+    public LongCacheableFunctionExecutor(Executor executor, int cacheCapacity) {
+        this(executor, cacheCapacity, null);
+    }
+
+    /**
+     * @param executor - executor service that will be used for the calculation
+     * @param cacheCapacity - the initial capacity of the underlying cache
+     * @param offHeapCodec - serializes the calculated values into off-heap records, null to keep the values on-heap.
+     *                     Null values are never moved off-heap.
+     */
+    public LongCacheableFunctionExecutor(Executor executor, int cacheCapacity, FixedSizeCodec<V> offHeapCodec) {
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        this.cache = new LongFutureTable<>(cacheCapacity, offHeapCodec);
+        this.executor = executor;
+        this.offHeap = offHeapCodec != null;
+    }
+
+    /**
+     * If the specified key is not already present in the cache, attempts to compute
+     * its value using the given function.
+     * If value is already present in the cache, the cached value will be returned
+     * (event the given function differs from the function that was used before).
+     *
+     * @param key the argument of the function, acts as a key in the cache
+     * @param function the calculation function
+     * @return the future represents the result is calculated
+     */
+    public Future<V> calculate(long key, LongFunction<V> function) {
+        return calculate(key, function, LONG_FUNCTION);
+    }
+
+    /**
+     * The same as {@link #calculate(long, LongFunction)} for the int keys (see IntCacheableFunctionExecutor):
+     * the function is applied to the narrowed key, without a capturing wrapper
+     */
+    Future<V> calculateInt(int key, IntFunction<V> function) {
+        return calculate(key, function, INT_FUNCTION);
+    }
+
+    private <F> Future<V> calculate(long key, F function, KeyFunction<? super F> keyFunction) {
+        CompletableFuture<V> future = cache.get(key);
+        if (future != null) {
+            return future;
+        }
+
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = cache.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        created.whenComplete((value, error) -> {
+            if (error != null) {
+                cache.remove(key, created);
+            } else if (offHeap && value != null) {
+                cache.moveOffHeap(key, created, value);
+            }
+        });
+        try {
+            executor.execute(() -> complete(key, created, function, keyFunction));
+        } catch (Throwable error) {
+            created.completeExceptionally(error);
+        }
+        return created;
+    }
+
+    /**
+     * @return the number of entries in the cache (both on-heap and off-heap)
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V, F> void complete(long key, CompletableFuture<V> future,
+                                        F function, KeyFunction<? super F> keyFunction) {
+        if (future.isDone()) {
+            return; // cancelled while queued
+        }
+        try {
+            future.complete((V) keyFunction.apply(function, key));
+        } catch (Throwable error) {
+            future.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Applies the function of the given key type to the key, shared by all the calls (non-capturing)
+     */
+    @FunctionalInterface
+    private interface KeyFunction<F> {
+        Object apply(F function, long key);
+    }
+}
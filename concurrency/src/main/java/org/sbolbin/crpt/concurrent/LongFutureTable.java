@@ -0,0 +1,262 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent open-addressing hash table of primitive long keys and futures, split into segments.
+ * Each segment is a pair of parallel arrays (linear probing, backward-shift deletion) guarded by a StampedLock:
+ * the lookup is an optimistic read, so the hit path neither locks nor allocates (no boxed key, no map node).
+ * <p>
+ * Optionally the segment keeps the completed values off-heap as fixed-size records (see {@link OffHeapLongRecords}),
+ * then only the futures being calculated stay on-heap.
+ */
+final class LongFutureTable<V> {
+
+    private static final int SEGMENTS = ceilingPowerOfTwo(Math.min(4 * Runtime.getRuntime().availableProcessors(), 64));
+    private static final int SEGMENT_MASK = SEGMENTS - 1;
+
+    private final Segment<V>[] segments;
+
+    @SuppressWarnings("unchecked")
+    LongFutureTable(int initialCapacity, FixedSizeCodec<V> offHeapCodec) {
+        int segmentCapacity = Math.max(16, initialCapacity / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(segmentCapacity,
+                    offHeapCodec == null ? null : new OffHeapLongRecords<>(offHeapCodec, segmentCapacity));
+        }
+    }
+
+    /**
+     * @return the future of the key, or null if the key is absent
+     */
+    CompletableFuture<V> get(long key) {
+        long hash = mix(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * @return the present future of the key, or null if the given future is inserted
+     */
+    CompletableFuture<V> putIfAbsent(long key, CompletableFuture<V> future) {
+        long hash = mix(key);
+        return segmentFor(hash).putIfAbsent(key, hash, future);
+    }
+
+    void remove(long key, CompletableFuture<V> future) {
+        long hash = mix(key);
+        segmentFor(hash).remove(key, hash, future);
+    }
+
+    /**
+     * Replaces the completed future with the off-heap record of its value
+     */
+    void moveOffHeap(long key, CompletableFuture<V> future, V value) {
+        long hash = mix(key);
+        segmentFor(hash).moveOffHeap(key, hash, future, value);
+    }
+
+    long size() {
+        long size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment<V> segmentFor(long hash) {
+        return segments[(int) (hash >>> 32) & SEGMENT_MASK];
+    }
+
+    /**
+     * The finalizer of MurmurHash3, spreads the sequential keys over the table
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+
+    private static final class Segment<V> {
+        private final StampedLock lock = new StampedLock();
+        private final OffHeapLongRecords<V> offHeap;
+        private long[] keys;
+        private CompletableFuture<V>[] futures;
+        private int size;
+
+        Segment(int capacity, OffHeapLongRecords<V> offHeap) {
+            this.offHeap = offHeap;
+            allocate(ceilingPowerOfTwo(capacity));
+        }
+
+        CompletableFuture<V> get(long key, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            CompletableFuture<V> future = find(key, hash);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    future = find(key, hash);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (future != null || offHeap == null) {
+                return future;
+            }
+
+            V value;
+            stamp = lock.readLock();
+            try {
+                value = offHeap.get(key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            return value == null ? null : CompletableFuture.completedFuture(value);
+        }
+
+        CompletableFuture<V> putIfAbsent(long key, long hash, CompletableFuture<V> future) {
+            long stamp = lock.writeLock();
+            try {
+                int index = indexOf(key, hash);
+                if (index >= 0) {
+                    return futures[index];
+                }
+                if (offHeap != null) {
+                    V value = offHeap.get(key, hash);
+                    if (value != null) {
+                        return CompletableFuture.completedFuture(value);
+                    }
+                }
+                insert(key, hash, future);
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void remove(long key, long hash, CompletableFuture<V> future) {
+            long stamp = lock.writeLock();
+            try {
+                int index = indexOf(key, hash);
+                if (index >= 0 && futures[index] == future) {
+                    removeAt(index);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void moveOffHeap(long key, long hash, CompletableFuture<V> future, V value) {
+            long stamp = lock.writeLock();
+            try {
+                int index = indexOf(key, hash);
+                if (index >= 0 && futures[index] == future) {
+                    offHeap.put(key, hash, value);
+                    removeAt(index);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size + (offHeap == null ? 0 : offHeap.size());
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * May observe a torn state when called under the optimistic read, the result is then discarded
+         * by the stamp validation; the probing is bounded, so it always terminates.
+         */
+        private CompletableFuture<V> find(long key, long hash) {
+            long[] keys = this.keys;
+            CompletableFuture<V>[] futures = this.futures;
+            if (keys.length != futures.length) {
+                return null;
+            }
+            int mask = keys.length - 1;
+            for (int i = (int) hash & mask, probes = 0; probes < keys.length; i = (i + 1) & mask, probes++) {
+                CompletableFuture<V> future = futures[i];
+                if (future == null) {
+                    return null;
+                }
+                if (keys[i] == key) {
+                    return future;
+                }
+            }
+            return null;
+        }
+
+        private int indexOf(long key, long hash) {
+            int mask = keys.length - 1;
+            for (int i = (int) hash & mask; futures[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(long key, long hash, CompletableFuture<V> future) {
+            if (size + 1 > keys.length >>> 1) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = (int) hash & mask;
+            while (futures[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            futures[i] = future;
+            size++;
+        }
+
+        private void removeAt(int index) {
+            int mask = keys.length - 1;
+            int hole = index;
+            for (int i = (hole + 1) & mask; futures[i] != null; i = (i + 1) & mask) {
+                int ideal = (int) mix(keys[i]) & mask;
+                // the entry may fill the hole only if the hole lies cyclically between its ideal slot and itself
+                if (((i - ideal) & mask) >= ((i - hole) & mask)) {
+                    keys[hole] = keys[i];
+                    futures[hole] = futures[i];
+                    hole = i;
+                }
+            }
+            keys[hole] = 0;
+            futures[hole] = null;
+            size--;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            CompletableFuture<V>[] oldFutures = futures;
+            allocate(oldKeys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldFutures[i] != null) {
+                    long key = oldKeys[i];
+                    insert(key, mix(key), oldFutures[i]);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            futures = new CompletableFuture[capacity];
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Least recently used eviction: a single access-order deque, the head is the victim
+ */
+final class LruEviction<K, V> implements Eviction<K, V> {
+
+    private final AccessOrderDeque<K, V> deque = new AccessOrderDeque<>();
+    private final long maximum;
+    private final Consumer<Node<K, V>> listener;
+    private long weightedSize;
+
+    LruEviction(long maximum, Consumer<Node<K, V>> listener) {
+        this.maximum = maximum;
+        this.listener = listener;
+    }
+
+    @Override
+    public void onAccess(Node<K, V> node) {
+        if (deque.contains(node)) {
+            deque.moveToLast(node);
+        }
+    }
+
+    @Override
+    public void onAdd(Node<K, V> node) {
+        if (node.retired || node.deque != null) {
+            return;
+        }
+        deque.addLast(node);
+        weightedSize += node.weight;
+        evict();
+    }
+
+    @Override
+    public void onUpdate(Node<K, V> node, int weight) {
+        if (deque.contains(node)) {
+            weightedSize += weight - node.weight;
+        }
+        node.weight = weight;
+        evict();
+    }
+
+    @Override
+    public void onRemove(Node<K, V> node) {
+        if (deque.contains(node)) {
+            deque.remove(node);
+            weightedSize -= node.weight;
+        }
+    }
+
+    @Override
+    public void expire(Predicate<Node<K, V>> expired) {
+        Node<K, V> node;
+        while ((node = deque.peekFirst()) != null && expired.test(node)) {
+            onRemove(node);
+            listener.accept(node);
+        }
+    }
+
+    private void evict() {
+        Node<K, V> victim;
+        while (weightedSize > maximum && (victim = deque.peekFirst()) != null) {
+            onRemove(victim);
+            listener.accept(victim);
+        }
+    }
+}
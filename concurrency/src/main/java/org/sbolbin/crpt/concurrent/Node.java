@@ -0,0 +1,72 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * The cache entry: the future of the calculation plus the bookkeeping of the eviction policy.
+ * The policy fields are guarded by the eviction lock (see {@link BoundedPolicy}).
+ */
+final class Node<K, V> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Node> REFRESHING =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "refreshing");
+
+    final K key;
+
+    /**
+     * Replaced with the new completed future by the refresh
+     */
+    volatile CompletableFuture<V> future;
+    volatile long writeTime;
+    volatile long accessTime;
+    private volatile int refreshing;
+
+    /**
+     * Set once the node is removed from the cache map, so that a late "add" task does not link it into the policy
+     */
+    volatile boolean retired;
+
+    /**
+     * Set before the future is completed with the value taken from the snapshot or the secondary tier,
+     * so that the completion keeps the write time of the value
+     */
+    boolean promoted;
+
+    // guarded by the eviction lock
+    int weight;
+    AccessOrderDeque<K, V> deque;
+    Node<K, V> prev;
+    Node<K, V> next;
+    boolean inWriteOrder;
+    Node<K, V> prevInWriteOrder;
+    Node<K, V> nextInWriteOrder;
+
+    Node(K key, CompletableFuture<V> future, int weight, long now) {
+        this.key = key;
+        this.future = future;
+        this.weight = weight;
+        this.writeTime = now;
+        this.accessTime = now;
+    }
+
+    /**
+     * @return true if the future is completed with a value (not exceptionally)
+     */
+    boolean hasValue() {
+        CompletableFuture<V> current = future;
+        return current.isDone() && !current.isCompletedExceptionally();
+    }
+
+    /**
+     * @return true if the caller is the only one to refresh the node
+     */
+    boolean startRefresh() {
+        return REFRESHING.compareAndSet(this, 0, 1);
+    }
+
+    void endRefresh() {
+        refreshing = 0;
+    }
+}
@@ -0,0 +1,117 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Open-addressing hash table of long keys and fixed-size value records stored in a direct buffer.
+ * The slot layout is [used: 1 byte][key: 8 bytes][record: codec.recordSize() bytes].
+ * Linear probing; the records are never removed, only overwritten (completed values are not invalidated).
+ * Not thread safe, guarded by the lock of the owning segment (see {@link LongFutureTable}).
+ */
+final class OffHeapLongRecords<V> {
+
+    private static final int USED_OFFSET = 0;
+    private static final int KEY_OFFSET = 1;
+    private static final int RECORD_OFFSET = 9;
+    private static final byte USED = 1;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final FixedSizeCodec<V> codec;
+    private final int slotSize;
+    private ByteBuffer buffer;
+    private int capacity;
+    private int size;
+
+    OffHeapLongRecords(FixedSizeCodec<V> codec, int initialCapacity) {
+        this.codec = codec;
+        this.slotSize = RECORD_OFFSET + codec.recordSize();
+        allocate(initialCapacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the value or null if the key is absent
+     */
+    V get(long key, long hash) {
+        int mask = capacity - 1;
+        for (int i = (int) hash & mask, probes = 0; probes < capacity; i = (i + 1) & mask, probes++) {
+            int offset = i * slotSize;
+            if (buffer.get(offset + USED_OFFSET) != USED) {
+                return null;
+            }
+            if (buffer.getLong(offset + KEY_OFFSET) == key) {
+                return codec.read(buffer, offset + RECORD_OFFSET);
+            }
+        }
+        return null;
+    }
+
+    void put(long key, long hash, V value) {
+        if (size + 1 > capacity >>> 1) {
+            grow();
+        }
+        int mask = capacity - 1;
+        for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+            int offset = i * slotSize;
+            boolean used = buffer.get(offset + USED_OFFSET) == USED;
+            if (!used || buffer.getLong(offset + KEY_OFFSET) == key) {
+                buffer.put(offset + USED_OFFSET, USED);
+                buffer.putLong(offset + KEY_OFFSET, key);
+                codec.write(value, buffer, offset + RECORD_OFFSET);
+                if (!used) {
+                    size++;
+                }
+                return;
+            }
+        }
+    }
+
+    private void grow() {
+        if (capacity >= MAX_CAPACITY || (long) capacity * 2 * slotSize > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The off-heap segment is full");
+        }
+        ByteBuffer old = buffer;
+        int oldCapacity = capacity;
+        allocate(capacity * 2);
+        for (int i = 0; i < oldCapacity; i++) {
+            int offset = i * slotSize;
+            if (old.get(offset + USED_OFFSET) == USED) {
+                long key = old.getLong(offset + KEY_OFFSET);
+                putRecord(key, LongFutureTable.mix(key), old, offset + RECORD_OFFSET);
+            }
+        }
+    }
+
+    private void putRecord(long key, long hash, ByteBuffer source, int recordOffset) {
+        int mask = capacity - 1;
+        int i = (int) hash & mask;
+        while (buffer.get(i * slotSize + USED_OFFSET) == USED) {
+            i = (i + 1) & mask;
+        }
+        int offset = i * slotSize;
+        buffer.put(offset + USED_OFFSET, USED);
+        buffer.putLong(offset + KEY_OFFSET, key);
+        copy(source, recordOffset, buffer, offset + RECORD_OFFSET, slotSize - RECORD_OFFSET);
+        size++;
+    }
+
+    private void allocate(int requestedCapacity) {
+        int slots = Math.max(16, requestedCapacity);
+        capacity = 1 << -Integer.numberOfLeadingZeros(slots - 1);
+        buffer = ByteBuffer.allocateDirect(capacity * slotSize);
+        size = 0;
+    }
+
+    private static void copy(ByteBuffer source, int from, ByteBuffer target, int to, int length) {
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            target.putLong(to + i, source.getLong(from + i));
+        }
+        for (; i < length; i++) {
+            target.put(to + i, source.get(from + i));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Striped, lossy, multiple-producer / single-consumer buffer of read events.
+ * Readers never block: when the stripe is full or contended the event is simply dropped,
+ * which only makes the recency information of the eviction policy slightly less accurate.
+ */
+final class ReadBuffer<E> {
+
+    static final int SUCCESS = 0;
+    static final int FULL = 1;
+    static final int FAILED = 2;
+
+    private static final int STRIPES = ceilingPowerOfTwo(Math.min(4 * Runtime.getRuntime().availableProcessors(), 64));
+    private static final int STRIPE_MASK = STRIPES - 1;
+    private static final int BUFFER_SIZE = 16;
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+    private final Stripe<E>[] stripes;
+
+    @SuppressWarnings("unchecked")
+    ReadBuffer() {
+        stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
+
+    /**
+     * @return SUCCESS if the event was recorded, FULL if the stripe has to be drained,
+     * FAILED if the stripe is contended
+     */
+    int offer(E e) {
+        return stripes[probe() & STRIPE_MASK].offer(e);
+    }
+
+    /**
+     * Must be called by a single thread at a time (under the eviction lock)
+     */
+    void drainTo(Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            stripe.drainTo(consumer);
+        }
+    }
+
+    private static int probe() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+
+    private static final class Stripe<E> {
+        private final AtomicLong writeCounter = new AtomicLong();
+        private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+        private volatile long readCounter;
+
+        int offer(E e) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            if (tail - head >= BUFFER_SIZE) {
+                return FULL;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) tail & BUFFER_MASK, e);
+                return SUCCESS;
+            }
+            return FAILED;
+        }
+
+        void drainTo(Consumer<E> consumer) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            while (head != tail) {
+                int index = (int) head & BUFFER_MASK;
+                E e = buffer.get(index);
+                if (e == null) {
+                    break; // slot claimed but not published yet
+                }
+                buffer.lazySet(index, null);
+                consumer.accept(e);
+                head++;
+            }
+            readCounter = head;
+        }
+    }
+}
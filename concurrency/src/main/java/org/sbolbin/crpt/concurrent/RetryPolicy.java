@@ -0,0 +1,75 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Retries of a failed calculation with exponential backoff.
+ * The retries are performed before the future is completed, so all the callers waiting for the key
+ * keep sharing the single in-flight calculation.
+ */
+public final class RetryPolicy {
+
+    private static final double DEFAULT_MULTIPLIER = 2.0d;
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final double multiplier;
+    private final Predicate<Throwable> retryable;
+
+    private RetryPolicy(int maxAttempts, long initialBackoffNanos, long maxBackoffNanos,
+                        double multiplier, Predicate<Throwable> retryable) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = initialBackoffNanos;
+        this.maxBackoffNanos = maxBackoffNanos;
+        this.multiplier = multiplier;
+        this.retryable = retryable;
+    }
+
+    /**
+     * @param maxAttempts - the total number of attempts, including the first one
+     * @param initialBackoff - the delay before the first retry, doubled for each next retry
+     * @param maxBackoff - the upper limit of the delay
+     * @param unit - the unit of the delays
+     * @return the policy retrying any exception
+     */
+    public static RetryPolicy exponentialBackoff(int maxAttempts, long initialBackoff, long maxBackoff, TimeUnit unit) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        if (initialBackoff < 0 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException(
+                    "backoff must be non-negative and maxBackoff must not be less than initialBackoff");
+        }
+        return new RetryPolicy(maxAttempts, unit.toNanos(initialBackoff), unit.toNanos(maxBackoff),
+                DEFAULT_MULTIPLIER, error -> true);
+    }
+
+    /**
+     * @param retryable - the exceptions that are worth retrying, others fail the calculation immediately
+     * @return the copy of the policy retrying only the matching exceptions
+     */
+    public RetryPolicy retryIf(Predicate<Throwable> retryable) {
+        if (retryable == null) {
+            throw new NullPointerException("retryable");
+        }
+        return new RetryPolicy(maxAttempts, initialBackoffNanos, maxBackoffNanos, multiplier, retryable);
+    }
+
+    /**
+     * @param attempt - the number of the failed attempt, starting from 1
+     */
+    boolean shouldRetry(int attempt, Throwable error) {
+        return attempt < maxAttempts && retryable.test(error);
+    }
+
+    /**
+     * @param attempt - the number of the failed attempt, starting from 1
+     * @return the delay before the next attempt
+     */
+    long backoffNanos(int attempt) {
+        double backoff = initialBackoffNanos * Math.pow(multiplier, attempt - 1);
+        return (long) Math.min(backoff, maxBackoffNanos);
+    }
+}
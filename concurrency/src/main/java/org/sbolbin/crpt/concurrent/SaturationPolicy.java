@@ -0,0 +1,20 @@
+package org.sbolbin.crpt.concurrent;
+
+/**
+ * What the bounded calculation pool does when all its threads are busy and its queue is full
+ * (see CacheableFunctionExecutor.Builder#boundedExecutor)
+ */
+public enum SaturationPolicy {
+
+    /**
+     * The calculation is rejected: the future completes exceptionally with RejectedExecutionException
+     * and the key is removed from the cache
+     */
+    REJECT,
+
+    /**
+     * The calling thread waits until the queue has room (back-pressure).
+     * The retries handed over by the shared timer are rejected instead, so the timer never waits.
+     */
+    WAIT
+}
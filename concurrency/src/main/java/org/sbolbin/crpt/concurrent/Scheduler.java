@@ -0,0 +1,46 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The shared daemon timer of the delayed tasks.
+ * The timer thread is a single one, so the task must only hand the actual work over to an executor.
+ */
+final class Scheduler {
+
+    private Scheduler() {
+    }
+
+    /**
+     * @throws RejectedExecutionException if the timer is not able to accept the task
+     */
+    static void schedule(Runnable handOff, long delay, TimeUnit unit) {
+        Holder.TIMER.schedule(handOff, delay, unit);
+    }
+
+    /**
+     * @return true if called by a task of the timer, which must not block
+     */
+    static boolean isTimerThread() {
+        return Thread.currentThread() == Holder.timerThread;
+    }
+
+    private static final class Holder {
+        private static volatile Thread timerThread;
+        private static final ScheduledExecutorService TIMER = createTimer();
+
+        private static ScheduledExecutorService createTimer() {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "cacheable-function-executor-timer");
+                thread.setDaemon(true);
+                timerThread = thread;
+                return thread;
+            });
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
+        }
+    }
+}
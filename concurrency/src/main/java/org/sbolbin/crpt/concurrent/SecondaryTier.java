@@ -0,0 +1,268 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The overflow tier of the bounded cache: the values evicted from the heap are demoted here and promoted back
+ * on the next miss of their key.
+ * <p>
+ * The tier is a circular log of [write time: long][key length: int][value length: int][key][value] records
+ * in a region of off-heap memory or of a file, the keys are indexed on-heap. The records are appended at the head
+ * of the log; once the region is full, the head wraps around and overwrites the oldest records (FIFO eviction).
+ * The writes are serialized, the reads take no lock: the head is advanced before the record is written,
+ * so a reader validates the record by checking that the head has not lapped it after the read.
+ * Once closed, the tier is empty and the region is released (the file is closed and deleted).
+ */
+final class SecondaryTier<K, V> {
+
+    private static final int RECORD_HEADER_SIZE = 16;
+
+    private final Region region;
+    private final long capacity;
+    private final SnapshotCodec<K> keyCodec;
+    private final SnapshotCodec<V> valueCodec;
+    private final ConcurrentHashMap<K, Long> index = new ConcurrentHashMap<>();
+    private final ArrayDeque<Record<K>> log = new ArrayDeque<>(); // guarded by this
+    private boolean closed; // guarded by this
+    private volatile long head;
+
+    private SecondaryTier(Region region, SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec) {
+        this.region = region;
+        this.capacity = region.capacity();
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+    }
+
+    static <K, V> SecondaryTier<K, V> offHeap(int capacity, SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec) {
+        return new SecondaryTier<>(new OffHeapRegion(capacity), keyCodec, valueCodec);
+    }
+
+    /**
+     * @throws UncheckedIOException if the file cannot be created
+     */
+    static <K, V> SecondaryTier<K, V> inFile(Path file, long capacity,
+                                             SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec) {
+        try {
+            return new SecondaryTier<>(new FileRegion(file, capacity), keyCodec, valueCodec);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the approximate number of entries, including the ones overwritten but not yet unlinked
+     */
+    long estimatedSize() {
+        return index.size();
+    }
+
+    /**
+     * Demotes the evicted value; the value larger than the whole region is dropped
+     *
+     * @return true if the value is written
+     */
+    boolean put(K key, V value, long writeTime) {
+        byte[] keyBytes = keyCodec.encode(key);
+        byte[] valueBytes = valueCodec.encode(value);
+        int length = RECORD_HEADER_SIZE + keyBytes.length + valueBytes.length;
+        if (length > capacity) {
+            return false;
+        }
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putLong(writeTime).putInt(keyBytes.length).putInt(valueBytes.length).put(keyBytes).put(valueBytes);
+        record.flip();
+
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            long position = head;
+            long physical = position % capacity;
+            if (physical + length > capacity) {
+                position += capacity - physical; // the record does not wrap, skip the tail of the region
+            }
+            long end = position + length;
+            head = end;
+            Record<K> oldest;
+            while ((oldest = log.peekFirst()) != null && oldest.position < end - capacity) {
+                log.pollFirst();
+                index.remove(oldest.key, oldest.position);
+            }
+            try {
+                region.write(position % capacity, record);
+            } catch (IOException | RuntimeException e) {
+                return false;
+            }
+            log.addLast(new Record<>(key, position));
+            index.put(key, position);
+        }
+        return true;
+    }
+
+    /**
+     * Drops the entries and releases the region, the following demotions and promotions fail
+     */
+    synchronized void close() {
+        closed = true;
+        log.clear();
+        index.clear();
+        try {
+            region.close();
+        } catch (IOException ignore) {
+            // the file is deleted on the JVM exit anyway
+        }
+    }
+
+    /**
+     * Promotes the value of the key: the entry is removed from the tier
+     *
+     * @return the entry, or null if the key is absent (or its record is unreadable)
+     */
+    Entry<V> take(K key) {
+        Long indexed = index.get(key);
+        if (indexed == null) {
+            return null;
+        }
+        long position = indexed;
+        index.remove(key, indexed);
+        if (head > position + capacity) {
+            return null; // overwritten
+        }
+        try {
+            long physical = position % capacity;
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            region.read(physical, header);
+            long writeTime = header.getLong(0);
+            int keyLength = header.getInt(8);
+            int valueLength = header.getInt(12);
+            if (keyLength < 0 || valueLength < 0
+                    || physical + RECORD_HEADER_SIZE + keyLength + valueLength > capacity) {
+                return null; // overwritten
+            }
+            ByteBuffer value = ByteBuffer.allocate(valueLength);
+            region.read(physical + RECORD_HEADER_SIZE + keyLength, value);
+            if (head > position + capacity) {
+                return null; // overwritten while reading
+            }
+            value.flip();
+            return new Entry<>(valueCodec.decode(value.asReadOnlyBuffer()), writeTime);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static final class Entry<V> {
+        final V value;
+        final long writeTime;
+
+        Entry(V value, long writeTime) {
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+    }
+
+    private static final class Record<K> {
+        final K key;
+        final Long position;
+
+        Record(K key, long position) {
+            this.key = key;
+            this.position = position;
+        }
+    }
+
+    /**
+     * The storage of the log, the positions are relative to the start of the region
+     */
+    private interface Region extends Closeable {
+
+        long capacity();
+
+        void write(long position, ByteBuffer source) throws IOException;
+
+        /**
+         * Fills the remaining bytes of the target
+         */
+        void read(long position, ByteBuffer target) throws IOException;
+    }
+
+    private static final class OffHeapRegion implements Region {
+        private final ByteBuffer buffer;
+
+        OffHeapRegion(int capacity) {
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+        }
+
+        @Override
+        public long capacity() {
+            return buffer.capacity();
+        }
+
+        @Override
+        public void write(long position, ByteBuffer source) {
+            ByteBuffer target = buffer.duplicate();
+            target.position((int) position);
+            target.put(source);
+        }
+
+        @Override
+        public void read(long position, ByteBuffer target) {
+            ByteBuffer source = buffer.duplicate();
+            source.limit((int) position + target.remaining());
+            source.position((int) position);
+            target.put(source);
+        }
+
+        @Override
+        public void close() {
+            // the memory is freed once the buffer is garbage collected
+        }
+    }
+
+    private static final class FileRegion implements Region {
+        private final FileChannel channel;
+        private final long capacity;
+
+        FileRegion(Path file, long capacity) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            this.capacity = capacity;
+        }
+
+        @Override
+        public long capacity() {
+            return capacity;
+        }
+
+        @Override
+        public void write(long position, ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                position += channel.write(source, position);
+            }
+        }
+
+        @Override
+        public void read(long position, ByteBuffer target) throws IOException {
+            while (target.hasRemaining()) {
+                int read = channel.read(target, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of the file");
+                }
+                position += read;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
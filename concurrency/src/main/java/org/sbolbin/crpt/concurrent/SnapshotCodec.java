@@ -0,0 +1,23 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Serializes the keys and the values of the cache into the snapshot file or the secondary tier
+ * (see CacheableFunctionExecutor.Builder#snapshot and CacheableFunctionExecutor.Builder#offHeapSecondaryTier)
+ */
+public interface SnapshotCodec<T> {
+
+    /**
+     * @param value - the key or the value to serialize, never null
+     * @return the serialized bytes
+     */
+    byte[] encode(T value);
+
+    /**
+     * @param bytes - the read-only buffer of exactly the bytes returned by {@link #encode(Object)},
+     *              from the position to the limit
+     * @return the deserialized key or value
+     */
+    T decode(ByteBuffer bytes);
+}
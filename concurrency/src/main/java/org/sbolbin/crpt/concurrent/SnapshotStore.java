@@ -0,0 +1,369 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The warm-start snapshot of the completed entries of the cache.
+ * <p>
+ * The file is [header][records][index]:
+ * <ul>
+ *     <li>header - magic, version, number of entries, number of index slots, offset of the index, creation time</li>
+ *     <li>record - [write time: long][key length: int][key bytes][value length: int][value bytes],
+ *     the write time is in epoch millis, so that the entries keep their age across the restarts</li>
+ *     <li>index - open-addressing table of [key hash: int][record offset: long] slots, 0 offset marks a free slot</li>
+ * </ul>
+ * The snapshot found at startup is memory-mapped, only its header is read: the record of a key is looked up
+ * on the miss of the key, so the pages of the file are read on demand. A record serves a single miss
+ * (it is consumed), the expired records are skipped.
+ * <p>
+ * The snapshot is written periodically by a background thread: the completed entries are read from the cache map
+ * without locking it, written into a temporary file, which then atomically replaces the previous snapshot.
+ * The records of the loaded snapshot that are neither consumed nor expired (and whose keys are not in the cache)
+ * are carried over into the new file, so the loaded snapshot keeps serving them until none is left.
+ * A missing, corrupt or unreadable snapshot is ignored.
+ */
+final class SnapshotStore<K, V> {
+
+    private static final int MAGIC = 0x43464553;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int COUNT_OFFSET = 8;
+    private static final int SLOTS_OFFSET = 12;
+    private static final int INDEX_OFFSET = 16;
+    private static final int SLOT_SIZE = 12;
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final long NEVER = BoundedPolicy.NEVER;
+
+    private final Path file;
+    private final SnapshotCodec<K> keyCodec;
+    private final SnapshotCodec<V> valueCodec;
+    private final long intervalNanos;
+    private final Ticker ticker;
+    private final long expireAfterWriteNanos;
+    private final ThreadPoolExecutor writer;
+    private final Set<Long> consumed = ConcurrentHashMap.newKeySet(); // the offsets of the loaded records
+    private volatile MappedByteBuffer loaded;
+    private volatile boolean closed;
+
+    /**
+     * @param ticker - the time source of the write times of the cache, or null if the cache is not timed
+     * @param expireAfterWriteNanos - time to live since the value is written, or NEVER
+     */
+    SnapshotStore(Path file, SnapshotCodec<K> keyCodec, SnapshotCodec<V> valueCodec, long intervalNanos,
+                  Ticker ticker, long expireAfterWriteNanos) {
+        this.file = file;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.intervalNanos = intervalNanos;
+        this.ticker = ticker;
+        this.expireAfterWriteNanos = expireAfterWriteNanos;
+        this.writer = new ThreadPoolExecutor(1, 1, CalculationExecutors.KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), CalculationExecutors.daemonThreads("snapshot-"));
+        this.writer.allowCoreThreadTimeOut(true);
+        this.loaded = map(file);
+    }
+
+    /**
+     * Consumes the record of the key in the loaded snapshot
+     *
+     * @return the entry, its write time is converted to the time of the ticker,
+     * or null if the key is absent, consumed or expired
+     */
+    SecondaryTier.Entry<V> lookup(K key) {
+        MappedByteBuffer buffer = loaded;
+        if (buffer == null) {
+            return null;
+        }
+        try {
+            byte[] keyBytes = keyCodec.encode(key);
+            int hash = hash(keyBytes);
+            int slots = buffer.getInt(SLOTS_OFFSET);
+            long indexOffset = buffer.getLong(INDEX_OFFSET);
+            int mask = slots - 1;
+            for (int i = hash & mask, probes = 0; probes < slots; i = (i + 1) & mask, probes++) {
+                int slot = (int) (indexOffset + (long) i * SLOT_SIZE);
+                long recordOffset = buffer.getLong(slot + 4);
+                if (recordOffset == 0) {
+                    return null;
+                }
+                if (buffer.getInt(slot) == hash && keyEquals(buffer, (int) recordOffset + 8, keyBytes)) {
+                    long writtenAt = buffer.getLong((int) recordOffset);
+                    long now = System.currentTimeMillis();
+                    if (isExpired(writtenAt, now) || !consumed.add(recordOffset)) {
+                        return null;
+                    }
+                    int valueOffset = (int) recordOffset + RECORD_HEADER_SIZE + keyBytes.length;
+                    V value = valueCodec.decode(slice(buffer, valueOffset + 4, buffer.getInt(valueOffset)));
+                    long age = TimeUnit.MILLISECONDS.toNanos(Math.max(0, now - writtenAt));
+                    return new SecondaryTier.Entry<>(value, ticker == null ? 0 : ticker.read() - age);
+                }
+            }
+            return null;
+        } catch (RuntimeException corrupt) {
+            loaded = null;
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot every interval, until the cache map is garbage collected
+     */
+    void start(Map<K, Node<K, V>> cache) {
+        scheduleNext(new WeakReference<>(cache));
+    }
+
+    /**
+     * Writes the completed entries of the cache and the remaining records of the loaded snapshot
+     * into the snapshot file
+     */
+    synchronized void write(Map<K, Node<K, V>> cache) throws IOException {
+        MappedByteBuffer previous = loaded;
+        int carried;
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            carried = writeFile(temp, cache, previous);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (carried == 0) {
+            release(previous); // the loaded snapshot has nothing left to serve
+        }
+    }
+
+    /**
+     * Stops the periodic writes and releases the loaded snapshot, the file is kept
+     */
+    void close() {
+        closed = true;
+        writer.shutdown();
+        release(loaded);
+    }
+
+    private void release(MappedByteBuffer buffer) {
+        if (buffer != null && buffer == loaded) {
+            loaded = null;
+            consumed.clear();
+        }
+    }
+
+    private void scheduleNext(WeakReference<Map<K, Node<K, V>>> cacheRef) {
+        if (closed) {
+            return;
+        }
+        try {
+            Scheduler.schedule(() -> {
+                try {
+                    writer.execute(() -> writePeriodically(cacheRef));
+                } catch (RejectedExecutionException ignore) {
+                    // closed
+                }
+            }, intervalNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ignore) {
+            // the timer is not available - no more snapshots
+        }
+    }
+
+    private void writePeriodically(WeakReference<Map<K, Node<K, V>>> cacheRef) {
+        Map<K, Node<K, V>> cache = cacheRef.get();
+        if (cache == null || closed) {
+            return;
+        }
+        try {
+            write(cache);
+        } catch (IOException | RuntimeException ignore) {
+            // keep the previous snapshot, try again on the next interval
+        }
+        scheduleNext(cacheRef);
+    }
+
+    /**
+     * @return the number of the records carried over from the loaded snapshot
+     */
+    private int writeFile(Path temp, Map<K, Node<K, V>> cache, MappedByteBuffer previous) throws IOException {
+        int count = 0;
+        int carried = 0;
+        int[] hashes = new int[64];
+        long[] offsets = new long[64];
+        long now = System.currentTimeMillis();
+        long nowTicks = ticker == null ? 0 : ticker.read();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.position(HEADER_SIZE);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            long offset = HEADER_SIZE;
+            int end = previous == null ? HEADER_SIZE : (int) previous.getLong(INDEX_OFFSET);
+            for (int record = HEADER_SIZE, length; record < end; record += length) {
+                length = recordLength(previous, record, end);
+                if (length < 0) {
+                    break; // corrupt - the rest is not carried over
+                }
+                if (consumed.contains((long) record) || isExpired(previous.getLong(record), now)) {
+                    continue;
+                }
+                byte[] bytes = new byte[length];
+                slice(previous, record, length).get(bytes);
+                byte[] keyBytes = Arrays.copyOfRange(bytes, RECORD_HEADER_SIZE,
+                        RECORD_HEADER_SIZE + previous.getInt(record + 8));
+                if (!isAbsent(keyBytes, cache)) {
+                    consumed.add((long) record); // the cache holds the key, the record must not serve a later miss
+                    continue;
+                }
+                if (count == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, count * 2);
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                hashes[count] = hash(keyBytes);
+                offsets[count] = offset;
+                count++;
+                carried++;
+                out.write(bytes);
+                offset += length;
+            }
+            for (Node<K, V> node : cache.values()) {
+                CompletableFuture<V> future = node.future;
+                if (!node.hasValue() || node.retired) {
+                    continue;
+                }
+                V value = future.getNow(null);
+                long writtenAt = ticker == null
+                        ? now
+                        : now - TimeUnit.NANOSECONDS.toMillis(nowTicks - node.writeTime);
+                if (value == null || isExpired(writtenAt, now)) {
+                    continue;
+                }
+                byte[] keyBytes = keyCodec.encode(node.key);
+                byte[] valueBytes = valueCodec.encode(value);
+                if (count == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, count * 2);
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                hashes[count] = hash(keyBytes);
+                offsets[count] = offset;
+                count++;
+                out.writeLong(writtenAt);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.writeInt(valueBytes.length);
+                out.write(valueBytes);
+                offset += RECORD_HEADER_SIZE + 4 + keyBytes.length + valueBytes.length;
+            }
+
+            int slots = Integer.highestOneBit(Math.max(1, count) * 2 - 1) << 1;
+            long size = offset + (long) slots * SLOT_SIZE;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("The snapshot exceeds 2 GB");
+            }
+            ByteBuffer index = ByteBuffer.allocate(slots * SLOT_SIZE);
+            int mask = slots - 1;
+            for (int n = 0; n < count; n++) {
+                int i = hashes[n] & mask;
+                while (index.getLong(i * SLOT_SIZE + 4) != 0) {
+                    i = (i + 1) & mask;
+                }
+                index.putInt(i * SLOT_SIZE, hashes[n]);
+                index.putLong(i * SLOT_SIZE + 4, offsets[n]);
+            }
+            out.write(index.array());
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(slots)
+                    .putLong(offset).putLong(System.currentTimeMillis());
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        return carried;
+    }
+
+    /**
+     * @return the length of the loaded record, or -1 if it does not fit before the end of the records
+     */
+    private static int recordLength(ByteBuffer buffer, int record, int end) {
+        if (record + RECORD_HEADER_SIZE + 4 > end) {
+            return -1;
+        }
+        int keyLength = buffer.getInt(record + 8);
+        if (keyLength < 0 || record + RECORD_HEADER_SIZE + keyLength + 4 > end) {
+            return -1;
+        }
+        int valueOffset = record + RECORD_HEADER_SIZE + keyLength;
+        int valueLength = buffer.getInt(valueOffset);
+        return valueLength < 0 || valueOffset + 4 + valueLength > end ? -1 : valueOffset + 4 + valueLength - record;
+    }
+
+    private boolean isAbsent(byte[] keyBytes, Map<K, Node<K, V>> cache) {
+        try {
+            return !cache.containsKey(keyCodec.decode(ByteBuffer.wrap(keyBytes).asReadOnlyBuffer()));
+        } catch (RuntimeException corrupt) {
+            return false;
+        }
+    }
+
+    private boolean isExpired(long writtenAt, long now) {
+        return expireAfterWriteNanos != NEVER
+                && TimeUnit.MILLISECONDS.toNanos(now - writtenAt) >= expireAfterWriteNanos;
+    }
+
+    private static MappedByteBuffer map(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int slots = buffer.getInt(SLOTS_OFFSET);
+            long indexOffset = buffer.getLong(INDEX_OFFSET);
+            boolean valid = buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION
+                    && buffer.getInt(COUNT_OFFSET) >= 0
+                    && slots > 0 && Integer.bitCount(slots) == 1
+                    && indexOffset >= HEADER_SIZE && indexOffset + (long) slots * SLOT_SIZE <= size;
+            return valid ? buffer : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean keyEquals(ByteBuffer buffer, int recordOffset, byte[] keyBytes) {
+        if (buffer.getInt(recordOffset) != keyBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (buffer.get(recordOffset + 4 + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(offset + length);
+        duplicate.position(offset);
+        return duplicate.slice().asReadOnlyBuffer();
+    }
+
+    private static int hash(byte[] bytes) {
+        return (int) LongFutureTable.mix(Arrays.hashCode(bytes));
+    }
+}
@@ -0,0 +1,42 @@
+package org.sbolbin.crpt.concurrent;
+
+/**
+ * Records the statistics of CacheableFunctionExecutor.
+ * The disabled counter does nothing and never reads the time, so the call sites cost next to nothing.
+ */
+interface StatsCounter {
+
+    void recordHits(int count);
+
+    void recordMisses(int count);
+
+    void recordSecondaryHits(int count);
+
+    void recordDemotion();
+
+    void recordLoadSuccess(long computeNanos);
+
+    void recordLoadFailure(long computeNanos);
+
+    void recordEviction();
+
+    void calculationStarted();
+
+    void calculationFinished();
+
+    /**
+     * @return the current time for measuring durations, 0 if disabled
+     */
+    long ticks();
+
+    /**
+     * @return the task recording the time it waited for the executor, or the task itself if disabled
+     */
+    Runnable measureQueueDelay(Runnable task);
+
+    CacheStats snapshot();
+
+    static StatsCounter disabled() {
+        return DisabledStatsCounter.INSTANCE;
+    }
+}
@@ -0,0 +1,20 @@
+package org.sbolbin.crpt.concurrent;
+
+/**
+ * The source of time for the expiration and refresh of cache entries, allows to control the time in tests
+ */
+@FunctionalInterface
+public interface Ticker {
+
+    /**
+     * @return the number of nanoseconds elapsed since a fixed but arbitrary point of time
+     */
+    long read();
+
+    /**
+     * @return the ticker based on java.lang.System#nanoTime
+     */
+    static Ticker systemTicker() {
+        return System::nanoTime;
+    }
+}
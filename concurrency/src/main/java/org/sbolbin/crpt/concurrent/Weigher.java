@@ -0,0 +1,16 @@
+package org.sbolbin.crpt.concurrent;
+
+/**
+ * Calculates the weight of a cache entry, used to bound the cache by the total weight of entries
+ * (see CacheableFunctionExecutor.Builder#maximumWeight)
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+    /**
+     * @param key the key of the entry
+     * @param value the calculated value
+     * @return the non-negative weight of the entry
+     */
+    int weigh(K key, V value);
+}
@@ -0,0 +1,204 @@
+package org.sbolbin.crpt.concurrent;
+
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Window TinyLFU eviction.
+ * New entries are placed into the admission window (LRU, 1% of the maximum). Entries leaving the window
+ * become candidates in the probation segment of the main space (segmented LRU: probation + protected, 80% of the main
+ * space is protected). When the cache is over its maximum, the candidate competes with the probation victim and
+ * the one with the lower estimated frequency (see {@link FrequencySketch}) is evicted.
+ * An access to a probation entry promotes it to the protected segment.
+ */
+final class WindowTinyLfuEviction<K, V> implements Eviction<K, V> {
+
+    private static final double WINDOW_PERCENT = 0.01d;
+    private static final double PROTECTED_PERCENT = 0.8d;
+
+    private final AccessOrderDeque<K, V> window = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> protectedDeque = new AccessOrderDeque<>();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final Consumer<Node<K, V>> listener;
+
+    private final long maximum;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    private long weightedSize;
+    private long windowWeightedSize;
+    private long protectedWeightedSize;
+    private long entries;
+    private long sketchCapacity;
+
+    WindowTinyLfuEviction(long maximum, Consumer<Node<K, V>> listener) {
+        this.maximum = maximum;
+        this.listener = listener;
+        this.windowMaximum = Math.max(1, (long) (maximum * WINDOW_PERCENT));
+        this.protectedMaximum = (long) ((maximum - windowMaximum) * PROTECTED_PERCENT);
+        this.sketchCapacity = Math.min(maximum, 1024);
+        sketch.ensureCapacity(sketchCapacity);
+    }
+
+    @Override
+    public void onAccess(Node<K, V> node) {
+        if (node.deque == null) {
+            return;
+        }
+        sketch.increment(node.key);
+        if (window.contains(node)) {
+            window.moveToLast(node);
+        } else if (probation.contains(node)) {
+            probation.remove(node);
+            protectedDeque.addLast(node);
+            protectedWeightedSize += node.weight;
+            demoteFromProtected();
+        } else {
+            protectedDeque.moveToLast(node);
+        }
+    }
+
+    @Override
+    public void onAdd(Node<K, V> node) {
+        if (node.retired || node.deque != null) {
+            return;
+        }
+        if (++entries > sketchCapacity && sketchCapacity < maximum) {
+            sketchCapacity = Math.min(2 * entries, maximum);
+            sketch.ensureCapacity(sketchCapacity);
+        }
+        sketch.increment(node.key);
+        window.addLast(node);
+        windowWeightedSize += node.weight;
+        weightedSize += node.weight;
+        evict();
+    }
+
+    @Override
+    public void onUpdate(Node<K, V> node, int weight) {
+        int delta = weight - node.weight;
+        if (window.contains(node)) {
+            windowWeightedSize += delta;
+        } else if (protectedDeque.contains(node)) {
+            protectedWeightedSize += delta;
+        }
+        if (node.deque != null) {
+            weightedSize += delta;
+        }
+        node.weight = weight;
+        evict();
+    }
+
+    @Override
+    public void onRemove(Node<K, V> node) {
+        if (node.deque == null) {
+            return;
+        }
+        if (window.contains(node)) {
+            windowWeightedSize -= node.weight;
+        } else if (protectedDeque.contains(node)) {
+            protectedWeightedSize -= node.weight;
+        }
+        node.deque.remove(node);
+        weightedSize -= node.weight;
+        entries--;
+    }
+
+    @Override
+    public void expire(Predicate<Node<K, V>> expired) {
+        expire(window, expired);
+        expire(probation, expired);
+        expire(protectedDeque, expired);
+    }
+
+    private void expire(AccessOrderDeque<K, V> deque, Predicate<Node<K, V>> expired) {
+        Node<K, V> node;
+        while ((node = deque.peekFirst()) != null && expired.test(node)) {
+            evictEntry(node);
+        }
+    }
+
+    private void demoteFromProtected() {
+        Node<K, V> node;
+        while (protectedWeightedSize > protectedMaximum && (node = protectedDeque.peekFirst()) != null) {
+            protectedDeque.remove(node);
+            protectedWeightedSize -= node.weight;
+            probation.addLast(node);
+        }
+    }
+
+    private void evict() {
+        int candidates = evictFromWindow();
+        evictFromMain(candidates);
+    }
+
+    /**
+     * Moves the entries overflowing the window into the probation segment
+     *
+     * @return the number of candidates moved
+     */
+    private int evictFromWindow() {
+        int candidates = 0;
+        Node<K, V> node;
+        while (windowWeightedSize > windowMaximum && (node = window.peekFirst()) != null) {
+            window.remove(node);
+            windowWeightedSize -= node.weight;
+            probation.addLast(node);
+            candidates++;
+        }
+        return candidates;
+    }
+
+    private void evictFromMain(int candidates) {
+        Node<K, V> victim = probation.peekFirst();
+        Node<K, V> candidate = probation.peekLast();
+        while (weightedSize > maximum) {
+            if (candidates == 0) {
+                candidate = null;
+            }
+            if (victim == null && candidate == null) {
+                // the probation segment is exhausted, fall back to the protected segment and the window
+                Node<K, V> fallback = protectedDeque.peekFirst() != null
+                        ? protectedDeque.peekFirst() : window.peekFirst();
+                if (fallback == null) {
+                    return;
+                }
+                evictEntry(fallback);
+                continue;
+            }
+
+            if (victim == null || victim == candidate) {
+                Node<K, V> evicted = candidate;
+                candidate = candidate.prev;
+                candidates--;
+                if (evicted == victim) {
+                    victim = null;
+                }
+                evictEntry(evicted);
+            } else if (candidate == null) {
+                Node<K, V> evicted = victim;
+                victim = victim.next;
+                evictEntry(evicted);
+            } else if (admit(candidate, victim)) {
+                Node<K, V> evicted = victim;
+                victim = victim.next;
+                evictEntry(evicted);
+            } else {
+                Node<K, V> evicted = candidate;
+                candidate = candidate.prev;
+                candidates--;
+                evictEntry(evicted);
+            }
+        }
+    }
+
+    private boolean admit(Node<K, V> candidate, Node<K, V> victim) {
+        return sketch.frequency(candidate.key) > sketch.frequency(victim.key);
+    }
+
+    private void evictEntry(Node<K, V> node) {
+        onRemove(node);
+        listener.accept(node);
+    }
+}
@@ -0,0 +1,74 @@
+package org.sbolbin.crpt.concurrent;
+
+/**
+ * Intrusive doubly-linked deque of cache nodes ordered by the time their value was written,
+ * the head is the first to expire (see CacheableFunctionExecutor.Builder#expireAfterWrite).
+ * A calculated value is the youngest one and goes to the tail; a promoted value keeps its older write time
+ * and is inserted in order, searching from the tail.
+ * Not thread safe, must be accessed under the eviction lock.
+ */
+final class WriteOrderDeque<K, V> {
+
+    private Node<K, V> first;
+    private Node<K, V> last;
+
+    Node<K, V> peekFirst() {
+        return first;
+    }
+
+    boolean contains(Node<K, V> node) {
+        return node.inWriteOrder;
+    }
+
+    void add(Node<K, V> node) {
+        long writeTime = node.writeTime;
+        Node<K, V> prev = last;
+        if (first != null && writeTime < first.writeTime) {
+            prev = null;
+        } else {
+            while (prev != null && writeTime < prev.writeTime) {
+                prev = prev.prevInWriteOrder;
+            }
+        }
+        Node<K, V> next = prev == null ? first : prev.nextInWriteOrder;
+        node.inWriteOrder = true;
+        node.prevInWriteOrder = prev;
+        node.nextInWriteOrder = next;
+        if (prev == null) {
+            first = node;
+        } else {
+            prev.nextInWriteOrder = node;
+        }
+        if (next == null) {
+            last = node;
+        } else {
+            next.prevInWriteOrder = node;
+        }
+    }
+
+    /**
+     * Moves the node to its place after its write time is changed
+     */
+    void reorder(Node<K, V> node) {
+        remove(node);
+        add(node);
+    }
+
+    void remove(Node<K, V> node) {
+        Node<K, V> prev = node.prevInWriteOrder;
+        Node<K, V> next = node.nextInWriteOrder;
+        if (prev == null) {
+            first = next;
+        } else {
+            prev.nextInWriteOrder = next;
+        }
+        if (next == null) {
+            last = prev;
+        } else {
+            next.prevInWriteOrder = prev;
+        }
+        node.prevInWriteOrder = null;
+        node.nextInWriteOrder = null;
+        node.inWriteOrder = false;
+    }
+}
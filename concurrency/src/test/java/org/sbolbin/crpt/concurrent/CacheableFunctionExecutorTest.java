@@ -3,12 +3,39 @@ package org.sbolbin.crpt.concurrent;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
@@ -21,6 +48,17 @@ public class CacheableFunctionExecutorTest {
 
     private static final int KEY = 1;
     private static final int EXPECTED_RESULT = 2;
+    private static final SnapshotCodec<Integer> INT_CODEC = new SnapshotCodec<Integer>() {
+        @Override
+        public byte[] encode(Integer value) {
+            return ByteBuffer.allocate(Integer.BYTES).putInt(value).array();
+        }
+
+        @Override
+        public Integer decode(ByteBuffer bytes) {
+            return bytes.getInt(bytes.position());
+        }
+    };
 
     private final Function<Integer, Integer> functionMock =  mock(Function.class);
     private final Function<Integer, Integer> otherFunctionMock =  mock(Function.class);
@@ -119,4 +157,809 @@ public class CacheableFunctionExecutorTest {
         verify(functionMock, times(1)).apply(KEY);
         verify(otherFunctionMock, times(1)).apply(otherKey);
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Bounded LRU cache - least recently used key evicted")
+    public void test_7() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> bounded = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .maximumSize(2)
+                .evictionPolicy(EvictionPolicy.LRU)
+                .build();
+        when(functionMock.apply(anyInt())).thenAnswer(invocation -> invocation.getArgument(0));
+        bounded.calculate(1, functionMock).get();
+        bounded.calculate(2, functionMock).get();
+        bounded.calculate(1, functionMock).get(); //access - key 2 becomes the least recently used
+
+        //act
+        bounded.calculate(3, functionMock).get();
+        bounded.cleanUp();
+
+        //verify
+        assertEquals(2, bounded.estimatedSize());
+        bounded.calculate(1, functionMock).get();
+        verify(functionMock, times(1)).apply(1); // still cached
+        bounded.calculate(2, functionMock).get();
+        verify(functionMock, times(2)).apply(2); // evicted - calculated again
+    }
+
+    @Test
+    @DisplayName("Cache bounded by weight - entries evicted when total weight exceeded")
+    public void test_8() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> bounded = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .maximumWeight(10, (key, value) -> value)
+                .evictionPolicy(EvictionPolicy.LRU)
+                .build();
+
+        //act
+        bounded.calculate(1, key -> 4).get();
+        bounded.calculate(2, key -> 4).get();
+        bounded.calculate(3, key -> 4).get();
+        bounded.cleanUp();
+
+        //verify
+        assertEquals(2, bounded.estimatedSize());
+    }
+
+    @Test
+    @DisplayName("W-TinyLFU cache - frequently used key survives a scan of one-hit keys")
+    public void test_9() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> bounded = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .maximumSize(100)
+                .evictionPolicy(EvictionPolicy.W_TINY_LFU)
+                .build();
+        when(functionMock.apply(anyInt())).thenAnswer(invocation -> invocation.getArgument(0));
+        for (int i = 0; i < 10; i++) {
+            bounded.calculate(KEY, functionMock).get();
+            bounded.cleanUp();
+        }
+
+        //act
+        for (int key = 1000; key < 2000; key++) {
+            bounded.calculate(key, functionMock).get();
+        }
+        bounded.cleanUp();
+
+        //verify
+        assertTrue(bounded.estimatedSize() <= 100);
+        bounded.calculate(KEY, functionMock).get();
+        verify(functionMock, times(1)).apply(KEY);
+    }
+
+    @Test
+    @DisplayName("Bounded cache under concurrent load - size stays within the maximum")
+    public void test_10() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> bounded = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .maximumSize(50)
+                .build();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+
+        //act
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            tasks.add(pool.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    int key = ThreadLocalRandom.current().nextInt(500);
+                    bounded.calculate(key, k -> k).get();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        pool.shutdown();
+        bounded.cleanUp();
+
+        //verify
+        assertTrue(bounded.estimatedSize() <= 50);
+    }
+
+    @Test
+    @DisplayName("Expire after write - value calculated again once the time to live passed")
+    public void test_11() throws Exception {
+        //setup
+        AtomicLong time = new AtomicLong();
+        CacheableFunctionExecutor<Integer, Integer> expiring = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .ticker(time::get)
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+        when(functionMock.apply(KEY)).thenReturn(EXPECTED_RESULT);
+        expiring.calculate(KEY, functionMock).get();
+
+        //act
+        time.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        expiring.calculate(KEY, functionMock).get(); //not expired yet
+        time.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        Integer result = expiring.calculate(KEY, functionMock).get();
+
+        //verify
+        assertEquals(EXPECTED_RESULT, result);
+        verify(functionMock, times(2)).apply(KEY);
+    }
+
+    @Test
+    @DisplayName("Expire after access - accessed value kept, idle value calculated again")
+    public void test_12() throws Exception {
+        //setup
+        AtomicLong time = new AtomicLong();
+        CacheableFunctionExecutor<Integer, Integer> expiring = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .ticker(time::get)
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .build();
+        when(functionMock.apply(KEY)).thenReturn(EXPECTED_RESULT);
+        expiring.calculate(KEY, functionMock).get();
+
+        //act
+        for (int i = 0; i < 3; i++) {
+            time.addAndGet(TimeUnit.SECONDS.toNanos(50));
+            expiring.calculate(KEY, functionMock).get(); //accessed before expiration
+        }
+        verify(functionMock, times(1)).apply(KEY);
+        time.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        expiring.calculate(KEY, functionMock).get();
+
+        //verify
+        verify(functionMock, times(2)).apply(KEY);
+    }
+
+    @Test
+    @DisplayName("Expired entries swept by the maintenance without access")
+    public void test_13() throws Exception {
+        //setup
+        AtomicLong time = new AtomicLong();
+        CacheableFunctionExecutor<Integer, Integer> expiring = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .ticker(time::get)
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+        for (int key = 0; key < 100; key++) {
+            expiring.calculate(key, k -> k).get();
+        }
+
+        //act
+        time.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        expiring.cleanUp();
+
+        //verify
+        assertEquals(0, expiring.estimatedSize());
+    }
+
+    @Test
+    @DisplayName("Refresh after write - old value returned while a single background refresh runs")
+    public void test_14() throws Exception {
+        //setup
+        AtomicLong time = new AtomicLong();
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        CacheableFunctionExecutor<Integer, Integer> refreshing = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(tasks::add)
+                .ticker(time::get)
+                .refreshAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+        when(functionMock.apply(KEY)).thenReturn(EXPECTED_RESULT, 100);
+        Future<Integer> first = refreshing.calculate(KEY, functionMock);
+        tasks.poll().run();
+        assertEquals(EXPECTED_RESULT, first.get());
+
+        //act
+        time.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        Integer stale1 = refreshing.calculate(KEY, functionMock).get();
+        Integer stale2 = refreshing.calculate(KEY, functionMock).get();
+        assertEquals(1, tasks.size()); //single refresh scheduled
+        tasks.poll().run();
+        Integer refreshed = refreshing.calculate(KEY, functionMock).get();
+
+        //verify
+        assertEquals(EXPECTED_RESULT, stale1);
+        assertEquals(EXPECTED_RESULT, stale2);
+        assertEquals(100, refreshed);
+        verify(functionMock, times(2)).apply(KEY);
+    }
+
+    @Test
+    @DisplayName("Calculation failed - failed entry removed, next call calculates again")
+    public void test_15() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> direct = new CacheableFunctionExecutor<>(Runnable::run, 16);
+        when(functionMock.apply(KEY)).thenThrow(new RuntimeException("Ex")).thenReturn(EXPECTED_RESULT);
+        assertThrows(ExecutionException.class, direct.calculate(KEY, functionMock)::get);
+
+        //act
+        Integer result = direct.calculate(KEY, functionMock).get();
+
+        //verify
+        assertEquals(EXPECTED_RESULT, result);
+        verify(functionMock, times(2)).apply(KEY);
+    }
+
+    @Test
+    @DisplayName("Future cancelled - cancelled entry removed, next call calculates again")
+    public void test_16() throws Exception {
+        //setup
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        CacheableFunctionExecutor<Integer, Integer> queued = new CacheableFunctionExecutor<>(tasks::add, 16);
+        when(functionMock.apply(KEY)).thenReturn(EXPECTED_RESULT);
+        queued.calculate(KEY, functionMock).cancel(true);
+
+        //act
+        Future<Integer> result = queued.calculate(KEY, functionMock);
+        tasks.forEach(Runnable::run);
+
+        //verify
+        assertEquals(EXPECTED_RESULT, result.get());
+        verify(functionMock, times(1)).apply(KEY);
+    }
+
+    @Test
+    @DisplayName("Failures cached for a while - same failure returned until the negative cache time passed")
+    public void test_17() throws Exception {
+        //setup
+        AtomicLong time = new AtomicLong();
+        CacheableFunctionExecutor<Integer, Integer> negative = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .ticker(time::get)
+                .expireFailuresAfter(10, TimeUnit.SECONDS)
+                .build();
+        when(functionMock.apply(KEY)).thenThrow(new RuntimeException("Ex")).thenReturn(EXPECTED_RESULT);
+        Future<Integer> failed = negative.calculate(KEY, functionMock);
+
+        //act
+        time.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        Future<Integer> cachedFailure = negative.calculate(KEY, functionMock);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        Integer result = negative.calculate(KEY, functionMock).get();
+
+        //verify
+        assertSame(failed, cachedFailure);
+        assertThrows(ExecutionException.class, cachedFailure::get);
+        assertEquals(EXPECTED_RESULT, result);
+        verify(functionMock, times(2)).apply(KEY);
+    }
+
+    @Test
+    @DisplayName("Retry policy - failed calculation retried with backoff, callers share the same future")
+    public void test_18() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> retrying = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .retry(RetryPolicy.exponentialBackoff(3, 10, 100, TimeUnit.MILLISECONDS))
+                .build();
+        when(functionMock.apply(KEY))
+                .thenThrow(new RuntimeException("Ex1"))
+                .thenThrow(new RuntimeException("Ex2"))
+                .thenReturn(EXPECTED_RESULT);
+
+        //act
+        Future<Integer> first = retrying.calculate(KEY, functionMock);
+        Future<Integer> second = retrying.calculate(KEY, functionMock);
+
+        //verify
+        assertSame(first, second);
+        assertEquals(EXPECTED_RESULT, first.get());
+        verify(functionMock, times(3)).apply(KEY);
+    }
+
+    @Test
+    @DisplayName("Retry policy - attempts exhausted, ExecutionException thrown on GET")
+    public void test_19() {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> retrying = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .retry(RetryPolicy.exponentialBackoff(2, 1, 1, TimeUnit.MILLISECONDS))
+                .build();
+        when(functionMock.apply(KEY)).thenThrow(new RuntimeException("Ex"));
+
+        //act
+        Future<Integer> future = retrying.calculate(KEY, functionMock);
+
+        //verify
+        assertThrows(ExecutionException.class, future::get);
+        verify(functionMock, times(2)).apply(KEY);
+    }
+
+    @Test
+    @DisplayName("Bulk calculation - hits taken from the cache, misses calculated by a single batch call")
+    public void test_20() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> direct = new CacheableFunctionExecutor<>(Runnable::run, 16);
+        List<Set<Integer>> calls = new CopyOnWriteArrayList<>();
+        direct.calculate(1, key -> 10).get();
+
+        //act
+        Map<Integer, Future<Integer>> result = direct.calculateAll(Arrays.asList(1, 2, 3), timesTen(calls));
+
+        //verify
+        assertEquals(Arrays.asList(1, 2, 3), new ArrayList<>(result.keySet()));
+        assertEquals(10, result.get(1).get());
+        assertEquals(20, result.get(2).get());
+        assertEquals(30, result.get(3).get());
+        assertEquals(Collections.singletonList(new HashSet<>(Arrays.asList(2, 3))), calls);
+    }
+
+    @Test
+    @DisplayName("Bulk calculation - misses split into batches of the configured size")
+    public void test_21() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> batching = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .batchSize(2)
+                .build();
+        List<Set<Integer>> calls = new CopyOnWriteArrayList<>();
+
+        //act
+        Map<Integer, Future<Integer>> result = batching.calculateAll(Arrays.asList(1, 2, 3, 4, 5), timesTen(calls));
+
+        //verify
+        assertEquals(50, result.get(5).get());
+        assertEquals(3, calls.size());
+        calls.forEach(batch -> assertTrue(batch.size() <= 2));
+    }
+
+    @Test
+    @DisplayName("Bulk calculation - key missing in the batch result fails and is calculated again on the next call")
+    public void test_22() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> direct = new CacheableFunctionExecutor<>(Runnable::run, 16);
+        Map<Integer, Future<Integer>> result = direct.calculateAll(Arrays.asList(1, 2),
+                keys -> Collections.singletonMap(1, 10));
+
+        //act
+        ExecutionException error = assertThrows(ExecutionException.class, result.get(2)::get);
+        Integer recalculated = direct.calculate(2, key -> 20).get();
+
+        //verify
+        assertEquals(10, result.get(1).get());
+        assertTrue(error.getCause() instanceof NoSuchElementException);
+        assertEquals(20, recalculated);
+    }
+
+    @Test
+    @DisplayName("Bulk calculation with batching window - misses of several calls merged into one batch")
+    public void test_23() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> batching = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .batchWindow(200, TimeUnit.MILLISECONDS)
+                .build();
+        List<Set<Integer>> calls = new CopyOnWriteArrayList<>();
+        Function<Set<Integer>, Map<Integer, Integer>> batchFunction = timesTen(calls);
+
+        //act
+        Map<Integer, Future<Integer>> first = batching.calculateAll(Arrays.asList(1, 2), batchFunction);
+        Map<Integer, Future<Integer>> second = batching.calculateAll(Arrays.asList(2, 3), batchFunction);
+
+        //verify
+        assertSame(first.get(2), second.get(2));
+        assertEquals(30, second.get(3).get());
+        assertEquals(10, first.get(1).get());
+        assertEquals(Collections.singletonList(new HashSet<>(Arrays.asList(1, 2, 3))), calls);
+    }
+
+    @Test
+    @DisplayName("Statistics recorded - hits, misses, loads and calculation time counted")
+    public void test_24() throws Exception {
+        //setup
+        AtomicLong time = new AtomicLong();
+        CacheableFunctionExecutor<Integer, Integer> recording = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .ticker(time::get)
+                .recordStats()
+                .build();
+
+        //act
+        recording.calculate(KEY, key -> {
+            time.addAndGet(1000);
+            return EXPECTED_RESULT;
+        }).get();
+        recording.calculate(KEY, functionMock).get();
+        Future<Integer> failed = recording.calculate(2, key -> {
+            throw new IllegalStateException();
+        });
+        CacheStats stats = recording.stats();
+
+        //verify
+        assertTrue(failed.isDone());
+        assertEquals(1, stats.hitCount());
+        assertEquals(2, stats.missCount());
+        assertEquals(1.0d / 3, stats.hitRate(), 1e-9);
+        assertEquals(1, stats.loadSuccessCount());
+        assertEquals(1, stats.loadFailureCount());
+        assertEquals(0, stats.inFlightCount());
+        assertEquals(2, stats.computeTime().count());
+        assertEquals(1000, stats.computeTime().maxNanos());
+        assertEquals(1000, stats.computeTime().percentileNanos(99));
+        assertEquals(2, stats.queueDelay().count());
+        verifyNoInteractions(functionMock);
+    }
+
+    @Test
+    @DisplayName("Statistics registered in JMX - evictions and size exposed by the MBean")
+    public void test_25() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> recording = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .maximumSize(1)
+                .evictionPolicy(EvictionPolicy.LRU)
+                .recordStats()
+                .build();
+        ObjectName name = recording.registerMBean("test_25");
+
+        //act
+        recording.calculate(1, key -> key).get();
+        recording.calculate(2, key -> key).get();
+        recording.cleanUp();
+
+        //verify
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "EvictionCount"));
+            assertEquals(2L, server.getAttribute(name, "MissCount"));
+            assertEquals(1L, server.getAttribute(name, "EstimatedSize"));
+            assertThrows(IllegalStateException.class, () -> recording.registerMBean("test_25"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    @Test
+    @DisplayName("Statistics not enabled - nothing recorded")
+    public void test_26() throws Exception {
+        //setup
+        when(functionMock.apply(KEY)).thenReturn(EXPECTED_RESULT);
+
+        //act
+        executor.calculate(KEY, functionMock).get();
+        executor.calculate(KEY, functionMock).get();
+        CacheStats stats = executor.stats();
+
+        //verify
+        assertEquals(0, stats.requestCount());
+        assertEquals(0, stats.computeTime().count());
+        assertEquals(0, stats.computeTime().percentileNanos(50));
+    }
+
+    @Test
+    @DisplayName("Virtual thread executor - value calculated outside of the common pool")
+    public void test_27() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, String> virtual = CacheableFunctionExecutor.<Integer, String>builder()
+                .virtualThreadExecutor()
+                .build();
+
+        //act
+        String thread = virtual.calculate(KEY, key -> Thread.currentThread().getName()).get();
+
+        //verify
+        assertFalse(thread.startsWith("ForkJoinPool.commonPool"));
+    }
+
+    @Test
+    @DisplayName("Bounded executor saturated - calculation rejected and key removed from the cache")
+    public void test_28() throws Exception {
+        //setup
+        CountDownLatch release = new CountDownLatch(1);
+        CacheableFunctionExecutor<Integer, Integer> bounded = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .boundedExecutor(1, 1, SaturationPolicy.REJECT)
+                .build();
+        Function<Integer, Integer> blocking = key -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return key;
+        };
+        Future<Integer> running = bounded.calculate(1, blocking);
+        Future<Integer> queued = bounded.calculate(2, blocking);
+
+        //act
+        Future<Integer> rejected = bounded.calculate(3, blocking);
+        release.countDown();
+
+        //verify
+        ExecutionException error = assertThrows(ExecutionException.class, rejected::get);
+        assertTrue(error.getCause() instanceof RejectedExecutionException);
+        assertEquals(1, running.get());
+        assertEquals(2, queued.get());
+        assertEquals(3, bounded.calculate(3, blocking).get());
+    }
+
+    @Test
+    @DisplayName("Key-affine executor - calculations of the key run on the same worker")
+    public void test_29() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, String> affine = CacheableFunctionExecutor.<Integer, String>builder()
+                .keyAffineExecutor(4)
+                .build();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        Function<Integer, String> failing = key -> {
+            threads.add(Thread.currentThread().getName());
+            throw new IllegalStateException();
+        };
+
+        //act
+        for (int i = 0; i < 10; i++) {
+            assertThrows(ExecutionException.class, affine.calculate(KEY, failing)::get);
+        }
+
+        //verify
+        assertEquals(10, threads.size());
+        assertEquals(1, new HashSet<>(threads).size());
+    }
+
+    @Test
+    @DisplayName("Snapshot written and loaded by a new executor - values taken from the snapshot")
+    public void test_30(@TempDir Path directory) throws Exception {
+        //setup
+        Path file = directory.resolve("cache.snapshot");
+        CacheableFunctionExecutor<Integer, Integer> previous = snapshotting(file);
+        for (int key = 1; key <= 100; key++) {
+            previous.calculate(key, k -> k * 10).get();
+        }
+        previous.writeSnapshot();
+        when(functionMock.apply(101)).thenReturn(EXPECTED_RESULT);
+
+        //act
+        CacheableFunctionExecutor<Integer, Integer> restarted = snapshotting(file);
+        Integer restored = restarted.calculate(42, functionMock).get();
+        Map<Integer, Future<Integer>> bulk = restarted.calculateAll(Arrays.asList(7, 8), timesTen(new ArrayList<>()));
+        Integer calculated = restarted.calculate(101, functionMock).get();
+
+        //verify
+        assertEquals(420, restored);
+        assertEquals(70, bulk.get(7).get());
+        assertEquals(EXPECTED_RESULT, calculated);
+        verify(functionMock, times(1)).apply(101);
+        verify(functionMock, times(0)).apply(42);
+    }
+
+    @Test
+    @DisplayName("Snapshot file corrupt - ignored, values calculated")
+    public void test_31(@TempDir Path directory) throws Exception {
+        //setup
+        Path file = directory.resolve("cache.snapshot");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+                17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33});
+        when(functionMock.apply(KEY)).thenReturn(EXPECTED_RESULT);
+
+        //act
+        Integer result = snapshotting(file).calculate(KEY, functionMock).get();
+
+        //verify
+        assertEquals(EXPECTED_RESULT, result);
+        verify(functionMock, times(1)).apply(KEY);
+    }
+
+    @Test
+    @DisplayName("Off-heap secondary tier - evicted value promoted back to the heap without calculation")
+    public void test_32() throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> tiered = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .maximumSize(2)
+                .evictionPolicy(EvictionPolicy.LRU)
+                .offHeapSecondaryTier(1024, INT_CODEC, INT_CODEC)
+                .recordStats()
+                .build();
+        for (int key = 1; key <= 5; key++) {
+            tiered.calculate(key, k -> k * 10).get();
+        }
+        tiered.cleanUp();
+
+        //act
+        Integer promoted = tiered.calculate(1, functionMock).get();
+        Integer hit = tiered.calculate(1, functionMock).get();
+        tiered.cleanUp();
+        CacheStats stats = tiered.stats();
+
+        //verify
+        assertEquals(10, promoted);
+        assertEquals(10, hit);
+        verifyNoInteractions(functionMock);
+        assertEquals(4, stats.demotionCount()); // keys 1-3, then 4 evicted by the promoted 1
+        assertEquals(1, stats.secondaryHitCount());
+        assertEquals(5, stats.missCount());
+        assertEquals(1, stats.hitCount());
+    }
+
+    @Test
+    @DisplayName("File secondary tier full - oldest value overwritten and calculated again")
+    public void test_33(@TempDir Path directory) throws Exception {
+        //setup
+        CacheableFunctionExecutor<Integer, Integer> tiered = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .maximumSize(1)
+                .evictionPolicy(EvictionPolicy.LRU)
+                .fileSecondaryTier(directory.resolve("tier"), 48, INT_CODEC, INT_CODEC)
+                .build();
+        for (int key = 1; key <= 4; key++) {
+            tiered.calculate(key, k -> k * 10).get();
+        }
+        tiered.cleanUp();
+        when(functionMock.apply(1)).thenReturn(EXPECTED_RESULT);
+
+        //act
+        Integer promoted = tiered.calculate(3, functionMock).get();
+        Integer recalculated = tiered.calculate(1, functionMock).get();
+
+        //verify
+        assertEquals(30, promoted);
+        assertEquals(EXPECTED_RESULT, recalculated);
+        verify(functionMock, times(1)).apply(1);
+        verify(functionMock, times(0)).apply(3);
+    }
+
+    @Test
+    @DisplayName("Secondary tier of unbounded cache - not allowed")
+    public void test_34() {
+        //setup
+        CacheableFunctionExecutor.Builder<Integer, Integer> builder = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .offHeapSecondaryTier(1024, INT_CODEC, INT_CODEC);
+
+        //act & verify
+        assertThrows(IllegalStateException.class, builder::build);
+    }
+
+    @Test
+    @DisplayName("Snapshot written after the restart - loaded entries not requested yet carried over")
+    public void test_35(@TempDir Path directory) throws Exception {
+        //setup
+        Path file = directory.resolve("cache.snapshot");
+        try (CacheableFunctionExecutor<Integer, Integer> previous = snapshotting(file)) {
+            for (int key = 1; key <= 3; key++) {
+                previous.calculate(key, k -> k * 10).get();
+            }
+            previous.writeSnapshot();
+        }
+        try (CacheableFunctionExecutor<Integer, Integer> restarted = snapshotting(file)) {
+            restarted.calculate(1, functionMock).get();
+            restarted.writeSnapshot();
+        }
+
+        //act
+        CacheableFunctionExecutor<Integer, Integer> again = snapshotting(file);
+        Integer consumed = again.calculate(1, functionMock).get();
+        Integer carried = again.calculate(3, functionMock).get();
+
+        //verify
+        assertEquals(10, consumed);
+        assertEquals(30, carried);
+        verifyNoInteractions(functionMock);
+    }
+
+    @Test
+    @DisplayName("Snapshot loaded - entry keeps its age and expires after the rest of its time to live")
+    public void test_36(@TempDir Path directory) throws Exception {
+        //setup
+        Path file = directory.resolve("cache.snapshot");
+        AtomicLong time = new AtomicLong();
+        CacheableFunctionExecutor<Integer, Integer> previous = expiringSnapshotting(file, time);
+        previous.calculate(KEY, k -> EXPECTED_RESULT).get();
+        time.addAndGet(TimeUnit.SECONDS.toNanos(50));
+        previous.writeSnapshot();
+        when(functionMock.apply(KEY)).thenReturn(EXPECTED_RESULT);
+
+        //act
+        AtomicLong restartTime = new AtomicLong();
+        CacheableFunctionExecutor<Integer, Integer> restarted = expiringSnapshotting(file, restartTime);
+        restarted.calculate(KEY, functionMock).get();
+        restartTime.addAndGet(TimeUnit.SECONDS.toNanos(20));
+        Integer result = restarted.calculate(KEY, functionMock).get();
+
+        //verify
+        assertEquals(EXPECTED_RESULT, result);
+        verify(functionMock, times(1)).apply(KEY); // loaded at the age of 50 seconds, expired 10 seconds later
+    }
+
+    @Test
+    @DisplayName("Promoted value - expired by the maintenance at its original write time")
+    public void test_37() throws Exception {
+        //setup
+        AtomicLong time = new AtomicLong();
+        CacheableFunctionExecutor<Integer, Integer> tiered = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .ticker(time::get)
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .maximumSize(2)
+                .evictionPolicy(EvictionPolicy.LRU)
+                .offHeapSecondaryTier(1024, INT_CODEC, INT_CODEC)
+                .build();
+        tiered.calculate(1, k -> k * 10).get();
+        tiered.calculate(2, k -> k * 10).get();
+        time.addAndGet(TimeUnit.SECONDS.toNanos(20));
+        tiered.calculate(3, k -> k * 10).get(); // evicts 1
+        tiered.cleanUp();
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        Integer promoted = tiered.calculate(1, functionMock).get(); // evicts 2
+
+        //act
+        time.addAndGet(TimeUnit.SECONDS.toNanos(35));
+        tiered.cleanUp();
+
+        //verify
+        assertEquals(10, promoted);
+        verifyNoInteractions(functionMock);
+        assertEquals(1, tiered.estimatedSize()); // 1 written 65 seconds ago, 3 - 45 seconds ago
+    }
+
+    @Test
+    @DisplayName("File secondary tier closed - file deleted, values calculated again")
+    public void test_38(@TempDir Path directory) throws Exception {
+        //setup
+        Path file = directory.resolve("tier");
+        CacheableFunctionExecutor<Integer, Integer> tiered = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .maximumSize(1)
+                .evictionPolicy(EvictionPolicy.LRU)
+                .fileSecondaryTier(file, 1024, INT_CODEC, INT_CODEC)
+                .build();
+        tiered.calculate(1, k -> k * 10).get();
+        tiered.calculate(2, k -> k * 10).get();
+        tiered.cleanUp();
+        when(functionMock.apply(1)).thenReturn(EXPECTED_RESULT);
+
+        //act
+        tiered.close();
+        Integer result = tiered.calculate(1, functionMock).get();
+
+        //verify
+        assertFalse(Files.exists(file));
+        assertEquals(EXPECTED_RESULT, result);
+        verify(functionMock, times(1)).apply(1);
+    }
+
+    @Test
+    @DisplayName("Failures cached for a while - failure not read again swept by the maintenance")
+    public void test_39() throws Exception {
+        //setup
+        AtomicLong time = new AtomicLong();
+        CacheableFunctionExecutor<Integer, Integer> negative = CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .ticker(time::get)
+                .expireFailuresAfter(10, TimeUnit.SECONDS)
+                .build();
+        when(functionMock.apply(KEY)).thenThrow(new RuntimeException("Ex"));
+        negative.calculate(KEY, functionMock);
+        negative.cleanUp();
+        long kept = negative.estimatedSize();
+
+        //act
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        negative.cleanUp();
+
+        //verify
+        assertEquals(1, kept);
+        assertEquals(0, negative.estimatedSize());
+    }
+
+    private static CacheableFunctionExecutor<Integer, Integer> snapshotting(Path file) {
+        return CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .snapshot(file, INT_CODEC, INT_CODEC, 1, TimeUnit.HOURS)
+                .build();
+    }
+
+    private static CacheableFunctionExecutor<Integer, Integer> expiringSnapshotting(Path file, AtomicLong time) {
+        return CacheableFunctionExecutor.<Integer, Integer>builder()
+                .executor(Runnable::run)
+                .ticker(time::get)
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .snapshot(file, INT_CODEC, INT_CODEC, 1, TimeUnit.HOURS)
+                .build();
+    }
+
+    private static Function<Set<Integer>, Map<Integer, Integer>> timesTen(List<Set<Integer>> calls) {
+        return keys -> {
+            calls.add(new HashSet<>(keys));
+            Map<Integer, Integer> values = new HashMap<>();
+            keys.forEach(key -> values.put(key, key * 10));
+            return values;
+        };
+    }
+}
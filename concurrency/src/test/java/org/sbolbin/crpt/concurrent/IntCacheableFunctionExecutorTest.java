@@ -0,0 +1,49 @@
+package org.sbolbin.crpt.concurrent;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("unchecked")
+public class IntCacheableFunctionExecutorTest {
+
+    private static final int KEY = -1;
+    private static final String EXPECTED_RESULT = "value";
+
+    private final IntFunction<String> functionMock = mock(IntFunction.class);
+    private final IntCacheableFunctionExecutor<String> executor = new IntCacheableFunctionExecutor<>(Runnable::run, 16);
+
+    @Test
+    @DisplayName("Value present in the cache - taken from the cache")
+    public void test_1() throws Exception {
+        //setup
+        when(functionMock.apply(KEY)).thenReturn(EXPECTED_RESULT);
+        executor.calculate(KEY, functionMock).get();
+
+        //act
+        String result = executor.calculate(KEY, functionMock).get();
+
+        //verify
+        assertEquals(EXPECTED_RESULT, result);
+        verify(functionMock, times(1)).apply(KEY);
+    }
+
+    @Test
+    @DisplayName("Exception occurred during calculation - ExecutionException thrown on GET")
+    public void test_2() {
+        //setup
+        when(functionMock.apply(KEY)).thenThrow(new RuntimeException("Ex"));
+
+        //act + verify
+        assertThrows(ExecutionException.class, executor.calculate(KEY, functionMock)::get);
+        assertEquals(0, executor.size());
+    }
+}
@@ -0,0 +1,122 @@
+package org.sbolbin.crpt.concurrent;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("unchecked")
+public class LongCacheableFunctionExecutorTest {
+
+    private static final long KEY = 1L;
+    private static final long EXPECTED_RESULT = 2L;
+
+    private static final FixedSizeCodec<Long> LONG_CODEC = new FixedSizeCodec<Long>() {
+        @Override
+        public int recordSize() {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void write(Long value, ByteBuffer buffer, int offset) {
+            buffer.putLong(offset, value);
+        }
+
+        @Override
+        public Long read(ByteBuffer buffer, int offset) {
+            return buffer.getLong(offset);
+        }
+    };
+
+    private final LongFunction<Long> functionMock = mock(LongFunction.class);
+    private final LongCacheableFunctionExecutor<Long> executor = new LongCacheableFunctionExecutor<>(Runnable::run, 16);
+
+    @AfterEach
+    public void afterEach() {
+        reset(functionMock);
+    }
+
+    @Test
+    @DisplayName("No value in cache for the key - key is calculated, then taken from the cache")
+    public void test_1() throws Exception {
+        //setup
+        when(functionMock.apply(KEY)).thenReturn(EXPECTED_RESULT);
+
+        //act
+        Long first = executor.calculate(KEY, functionMock).get();
+        Long second = executor.calculate(KEY, functionMock).get();
+
+        //verify
+        assertEquals(EXPECTED_RESULT, first);
+        assertEquals(EXPECTED_RESULT, second);
+        verify(functionMock, times(1)).apply(KEY);
+    }
+
+    @Test
+    @DisplayName("Exception occurred during calculation - failed entry removed, next call calculates again")
+    public void test_2() throws Exception {
+        //setup
+        when(functionMock.apply(KEY)).thenThrow(new RuntimeException("Ex")).thenReturn(EXPECTED_RESULT);
+        assertThrows(ExecutionException.class, executor.calculate(KEY, functionMock)::get);
+
+        //act
+        Long result = executor.calculate(KEY, functionMock).get();
+
+        //verify
+        assertEquals(EXPECTED_RESULT, result);
+        verify(functionMock, times(2)).apply(KEY);
+    }
+
+    @Test
+    @DisplayName("Many keys - table grows, every key calculated once")
+    public void test_3() throws Exception {
+        //setup
+        when(functionMock.apply(anyLong())).thenAnswer(invocation -> (long) invocation.getArgument(0) * 10);
+        for (long key = 0; key < 10_000; key++) {
+            executor.calculate(key, functionMock);
+        }
+        reset(functionMock);
+
+        //act
+        for (long key = 0; key < 10_000; key++) {
+            assertEquals(key * 10, executor.calculate(key, functionMock).get());
+        }
+
+        //verify
+        assertEquals(10_000, executor.size());
+        verifyNoInteractions(functionMock);
+    }
+
+    @Test
+    @DisplayName("Off-heap store - calculated values moved off-heap and read back")
+    public void test_4() throws Exception {
+        //setup
+        LongCacheableFunctionExecutor<Long> offHeap = new LongCacheableFunctionExecutor<>(Runnable::run, 16, LONG_CODEC);
+        when(functionMock.apply(anyLong())).thenAnswer(invocation -> (long) invocation.getArgument(0) * 10);
+        for (long key = 0; key < 10_000; key++) {
+            offHeap.calculate(key, functionMock);
+        }
+        reset(functionMock);
+
+        //act
+        Future<Long> result = offHeap.calculate(1234, functionMock);
+
+        //verify
+        assertEquals(12340L, result.get());
+        assertEquals(10_000, offHeap.size());
+        verifyNoInteractions(functionMock);
+    }
+}
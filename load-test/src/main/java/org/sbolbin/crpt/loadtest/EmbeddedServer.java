@@ -0,0 +1,45 @@
+package org.sbolbin.crpt.loadtest;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.sbolbin.crpt.config.WebInitializer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The embedded Tomcat running the rest-controller application, bootstrapped by its WebInitializer
+ * (as the WAR in a servlet container), on the root context path
+ */
+final class EmbeddedServer implements AutoCloseable {
+
+    private final Tomcat tomcat;
+
+    /**
+     * @param port - the port to listen to, 0 for any free port
+     */
+    EmbeddedServer(int port) throws IOException, LifecycleException {
+        Path baseDir = Files.createTempDirectory("load-test-tomcat-");
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(baseDir.toString());
+        tomcat.setPort(port);
+        tomcat.getConnector();
+
+        Context context = tomcat.addContext("", baseDir.toString());
+        context.addServletContainerInitializer(
+                (classes, servletContext) -> new WebInitializer().onStartup(servletContext), null);
+        tomcat.start();
+    }
+
+    int port() {
+        return tomcat.getConnector().getLocalPort();
+    }
+
+    @Override
+    public void close() throws LifecycleException {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+}
@@ -0,0 +1,171 @@
+package org.sbolbin.crpt.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the open-loop load test of POST /v1/order: the requests are sent at a constant rate,
+ * the latencies are corrected for the coordinated omission (see OpenLoopGenerator).
+ * Without the url the application is started in the embedded Tomcat, so the test runs offline on a single box.
+ * <p>
+ * Usage: java -Drate=1000 -Dduration=30 -jar target/load-test.jar
+ * <ul>
+ *     <li>url - the URL of the orders, the embedded server by default</li>
+ *     <li>rate - the requests per second, 1000 by default</li>
+ *     <li>duration - the seconds of the measurement, 30 by default</li>
+ *     <li>warmup - the seconds of the warmup at the same rate, not recorded, 10 by default</li>
+ *     <li>connections - the concurrent connections, 16 by default</li>
+ *     <li>mix - the shares of the requests, "valid:90,invalid:9,large:1" by default</li>
+ *     <li>largeProducts - the products of the large order, 10000 by default</li>
+ *     <li>result - the directory of the latency distributions (.hgrm) and the summary,
+ *     results/load-yyyyMMdd-HHmmss by default</li>
+ * </ul>
+ * An invalid argument stops the test with the usage message and the exit code 2.
+ */
+public class LoadTest {
+
+    private static final double MICROS_PER_MILLI = 1000.0;
+    private static final int MAX_RATE = 1_000_000_000; // the interval between the requests is at least 1 ns
+    private static final String USAGE = "Usage: java [-Durl=<url>] [-Drate=<requests per second>]"
+            + " [-Dduration=<seconds>] [-Dwarmup=<seconds>] [-Dconnections=<connections>]"
+            + " [-Dmix=valid:90,invalid:9,large:1] [-DlargeProducts=<products>] [-Dresult=<directory>]"
+            + " -jar target/load-test.jar";
+
+    public static void main(String[] args) throws Exception {
+        int rate;
+        int duration;
+        int warmup;
+        int connections;
+        PayloadMix mix;
+        try {
+            rate = intProperty("rate", 1000, 1, MAX_RATE);
+            duration = intProperty("duration", 30, 1, Integer.MAX_VALUE);
+            warmup = intProperty("warmup", 10, 0, Integer.MAX_VALUE);
+            connections = intProperty("connections", 16, 1, Integer.MAX_VALUE);
+            mix = mix(System.getProperty("mix", "valid:90,invalid:9,large:1"),
+                    intProperty("largeProducts", 10000, 1, Integer.MAX_VALUE));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        Path resultDir = Paths.get(System.getProperty("result", defaultResultDir()));
+
+        // the keep-alive connections of HttpURLConnection are pooled per JVM, one per generator connection
+        System.setProperty("http.maxConnections", String.valueOf(connections));
+        System.setProperty("sun.net.http.retryPost", "false");
+
+        String url = System.getProperty("url");
+        EmbeddedServer server = null;
+        if (url == null) {
+            server = new EmbeddedServer(0);
+            url = "http://localhost:" + server.port() + "/v1/order";
+        }
+        try {
+            OpenLoopGenerator generator = new OpenLoopGenerator(new URL(url), mix, rate, connections);
+            if (warmup > 0) {
+                System.out.printf("Warmup: %d s at %d req/s against %s%n", warmup, rate, url);
+                generator.run(warmup, TimeUnit.SECONDS);
+            }
+            System.out.printf("Measurement: %d s at %d req/s against %s%n", duration, rate, url);
+            OpenLoopGenerator.Result result = generator.run(duration, TimeUnit.SECONDS);
+            report(result, mix, resultDir);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the property is not an integer within the bounds
+     */
+    private static int intProperty(String name, int defaultValue, int min, int max) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignore) {
+            // reported below
+        }
+        throw new IllegalArgumentException(name + " must be an integer from " + min + " to " + max + ": " + value);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the mix is not a list of type:share pairs with a positive share
+     * and the shares summing up to Integer.MAX_VALUE
+     */
+    private static PayloadMix mix(String mix, int largeProducts) throws Exception {
+        try {
+            return new PayloadMix(mix, largeProducts);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("mix must be a list of type:share pairs"
+                    + " (types: valid, invalid, large, shares summing up to " + Integer.MAX_VALUE + "): " + mix, e);
+        }
+    }
+
+    private static void report(OpenLoopGenerator.Result result, PayloadMix mix, Path resultDir) throws Exception {
+        Files.createDirectories(resultDir);
+        try (PrintStream summary = new PrintStream(resultDir.resolve("summary.txt").toFile(), "UTF-8")) {
+            String header = String.format(Locale.ROOT, "%-8s %10s %10s %10s %10s %10s %10s",
+                    "type", "count", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+            print(summary, header);
+            for (PayloadMix.Type type : mix.types()) {
+                Histogram histogram = result.histogram(type);
+                print(summary, line(type.name().toLowerCase(Locale.ROOT), histogram, result.elapsedNanos()));
+                writeDistribution(histogram, resultDir.resolve(type.name().toLowerCase(Locale.ROOT) + ".hgrm"));
+            }
+            Histogram total = result.total();
+            print(summary, line("total", total, result.elapsedNanos()));
+            writeDistribution(total, resultDir.resolve("total.hgrm"));
+            print(summary, String.format(Locale.ROOT, "unexpected statuses: %d, failed requests: %d",
+                    result.unexpectedStatuses(), result.failures()));
+        }
+        System.out.println("Results written to " + resultDir.toAbsolutePath());
+    }
+
+    private static String line(String name, Histogram histogram, long elapsedNanos) {
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        return String.format(Locale.ROOT, "%-8s %10d %10.1f %10.3f %10.3f %10.3f %10.3f",
+                name,
+                histogram.getTotalCount(),
+                histogram.getTotalCount() / seconds,
+                histogram.getValueAtPercentile(50) / MICROS_PER_MILLI,
+                histogram.getValueAtPercentile(99) / MICROS_PER_MILLI,
+                histogram.getValueAtPercentile(99.9) / MICROS_PER_MILLI,
+                histogram.getMaxValue() / MICROS_PER_MILLI);
+    }
+
+    private static void print(PrintStream summary, String line) {
+        System.out.println(line);
+        summary.println(line);
+    }
+
+    /**
+     * Writes the percentile distribution in milliseconds, the format of the HdrHistogram plotter
+     */
+    private static void writeDistribution(Histogram histogram, Path file) throws Exception {
+        try (PrintStream out = new PrintStream(file.toFile(), "UTF-8")) {
+            histogram.outputPercentileDistribution(out, MICROS_PER_MILLI);
+        }
+    }
+
+    private static String defaultResultDir() {
+        return "results/load-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+    }
+}
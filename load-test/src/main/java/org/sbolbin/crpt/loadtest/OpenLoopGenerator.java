@@ -0,0 +1,191 @@
+package org.sbolbin.crpt.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the requests at the constant rate regardless of the response times (open loop).
+ * The request i is due at start + i / rate; the connections take the requests in turns (i modulo connections),
+ * each connection sends its requests one by one over a keep-alive HTTP connection.
+ * <p>
+ * The latency is measured from the time the request is due, not from the time it is actually sent:
+ * a request delayed behind a slow response is accounted with its waiting time, so the histograms do not suffer
+ * from the coordinated omission. The latencies are recorded in microseconds.
+ */
+final class OpenLoopGenerator {
+
+    private static final int HISTOGRAM_DIGITS = 3;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final URL url;
+    private final PayloadMix mix;
+    private final int rate;
+    private final int connections;
+
+    /**
+     * @param url - the URL of the orders
+     * @param mix - the request bodies
+     * @param rate - the requests per second
+     * @param connections - the concurrent connections
+     */
+    OpenLoopGenerator(URL url, PayloadMix mix, int rate, int connections) {
+        this.url = url;
+        this.mix = mix;
+        this.rate = rate;
+        this.connections = connections;
+    }
+
+    /**
+     * Sends the requests due within the given time and waits for all the responses
+     */
+    Result run(long duration, TimeUnit unit) throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long requests = unit.toNanos(duration) / intervalNanos;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+
+        List<Worker> workers = new ArrayList<>(connections);
+        List<Thread> threads = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            Worker worker = new Worker(i, start, intervalNanos, requests);
+            Thread thread = new Thread(worker, "load-" + i);
+            thread.setDaemon(true);
+            workers.add(worker);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Result result = new Result(System.nanoTime() - start);
+        for (Worker worker : workers) {
+            result.add(worker);
+        }
+        return result;
+    }
+
+    private final class Worker implements Runnable {
+        private final int index;
+        private final long start;
+        private final long intervalNanos;
+        private final long requests;
+        private final Map<PayloadMix.Type, Histogram> histograms = new EnumMap<>(PayloadMix.Type.class);
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private long unexpectedStatuses;
+        private long failures;
+
+        Worker(int index, long start, long intervalNanos, long requests) {
+            this.index = index;
+            this.start = start;
+            this.intervalNanos = intervalNanos;
+            this.requests = requests;
+            for (PayloadMix.Type type : PayloadMix.Type.values()) {
+                histograms.put(type, new Histogram(HISTOGRAM_DIGITS));
+            }
+        }
+
+        @Override
+        public void run() {
+            for (long sequence = index; sequence < requests; sequence += connections) {
+                long due = start + sequence * intervalNanos;
+                for (long delay = due - System.nanoTime(); delay > 0; delay = due - System.nanoTime()) {
+                    LockSupport.parkNanos(delay);
+                }
+                PayloadMix.Type type = mix.typeOf(sequence);
+                try {
+                    int status = send(mix.body(type));
+                    if (status != type.expectedStatus) {
+                        unexpectedStatuses++;
+                    }
+                } catch (IOException e) {
+                    failures++;
+                }
+                long latencyNanos = System.nanoTime() - due;
+                histograms.get(type).recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+            }
+        }
+
+        private int send(byte[] body) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            // the response is read to the end, so the connection is reused
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    while (in.read(buffer) >= 0) {
+                        // drain
+                    }
+                }
+            }
+            return status;
+        }
+    }
+
+    /**
+     * The latencies of the run by the payload type, and the request counts
+     */
+    static final class Result {
+        private final long elapsedNanos;
+        private final Map<PayloadMix.Type, Histogram> histograms = new EnumMap<>(PayloadMix.Type.class);
+        private final AtomicLong unexpectedStatuses = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+
+        Result(long elapsedNanos) {
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        private void add(Worker worker) {
+            for (Map.Entry<PayloadMix.Type, Histogram> entry : worker.histograms.entrySet()) {
+                histograms.computeIfAbsent(entry.getKey(), type -> new Histogram(HISTOGRAM_DIGITS))
+                        .add(entry.getValue());
+            }
+            unexpectedStatuses.addAndGet(worker.unexpectedStatuses);
+            failures.addAndGet(worker.failures);
+        }
+
+        long elapsedNanos() {
+            return elapsedNanos;
+        }
+
+        Histogram histogram(PayloadMix.Type type) {
+            return histograms.get(type);
+        }
+
+        /**
+         * @return the latencies of all the requests
+         */
+        Histogram total() {
+            Histogram total = new Histogram(HISTOGRAM_DIGITS);
+            for (Histogram histogram : histograms.values()) {
+                total.add(histogram);
+            }
+            return total;
+        }
+
+        long unexpectedStatuses() {
+            return unexpectedStatuses.get();
+        }
+
+        long failures() {
+            return failures.get();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.sbolbin.crpt.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.sbolbin.crpt.domain.Order;
+import org.sbolbin.crpt.domain.Product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The request bodies of the load test and their shares, e.g. "valid:90,invalid:9,large:1".
+ * The type of the request is a function of its sequence number, so the mix is the same in every run.
+ */
+final class PayloadMix {
+
+    enum Type {
+        /** the order of one product, 200 */
+        VALID(200),
+        /** the order with invalid seller, customer and product, 400 */
+        INVALID(400),
+        /** the valid order of many products, 200 */
+        LARGE(200);
+
+        final int expectedStatus;
+
+        Type(int expectedStatus) {
+            this.expectedStatus = expectedStatus;
+        }
+    }
+
+    private final Map<Type, byte[]> bodies = new EnumMap<>(Type.class);
+    private final Type[] types;
+    private final int[] cumulativeWeights;
+
+    /**
+     * @param mix - the comma separated shares of the types
+     * @param largeProducts - the number of the products of the large order, at least 1
+     */
+    PayloadMix(String mix, int largeProducts) throws JsonProcessingException {
+        List<Type> typeList = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        long total = 0;
+        for (String share : mix.split(",")) {
+            String[] parts = share.trim().split(":");
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                typeList.add(Type.valueOf(parts[0].trim().toUpperCase(Locale.ROOT)));
+                total += weight;
+                if (total > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("The shares must sum up to " + Integer.MAX_VALUE + ": " + mix);
+                }
+                weights.add((int) total);
+            }
+        }
+        if (typeList.isEmpty()) {
+            throw new IllegalArgumentException("The mix must contain a positive share: " + mix);
+        }
+        types = typeList.toArray(new Type[0]);
+        cumulativeWeights = weights.stream().mapToInt(Integer::intValue).toArray();
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        Product product = new Product("1234567890123", "milk");
+        bodies.put(Type.VALID, objectMapper.writeValueAsBytes(
+                new Order("123456789", "234567890", Collections.singletonList(product))));
+        bodies.put(Type.INVALID, objectMapper.writeValueAsBytes(
+                new Order("123", null, Collections.singletonList(new Product("shortCode", "")))));
+        List<Product> products = new ArrayList<>(largeProducts);
+        for (int i = 0; i < largeProducts; i++) {
+            products.add(new Product(String.format("%013d", i % 1000), "product " + (i % 1000)));
+        }
+        bodies.put(Type.LARGE, objectMapper.writeValueAsBytes(new Order("123456789", "234567890", products)));
+    }
+
+    /**
+     * @return the type of the request of the given sequence number
+     */
+    Type typeOf(long sequence) {
+        int point = (int) Long.remainderUnsigned(mix(sequence), cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (point < cumulativeWeights[i]) {
+                return types[i];
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    byte[] body(Type type) {
+        return bodies.get(type);
+    }
+
+    Type[] types() {
+        return types.clone();
+    }
+
+    /**
+     * The finalizer of SplitMix64, scatters the sequential numbers
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
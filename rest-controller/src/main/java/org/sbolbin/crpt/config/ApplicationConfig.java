@@ -1,18 +1,133 @@
 package org.sbolbin.crpt.config;
 
+import com.fasterxml.jackson.databind.Module;
+import org.sbolbin.crpt.concurrent.CalculationExecutors;
+import org.sbolbin.crpt.json.InterningModule;
+import org.sbolbin.crpt.metrics.StageTimingInterceptor;
+import org.sbolbin.crpt.metrics.TimingValidator;
+import org.sbolbin.crpt.validation.OrderValidator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.validation.Validator;
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 @EnableWebMvc
 @ComponentScan("org.sbolbin.crpt")
-public class ApplicationConfig {
+public class ApplicationConfig implements WebMvcConfigurer {
+
+    @Value("${order.validation:compiled}")
+    private String validation;
+
+    @Value("${order.json.intern-capacity:65536}")
+    private int internCapacity;
+
+    @Autowired
+    private StageTimingInterceptor stageTimingInterceptor;
+
+    @Bean
+    public static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
+        return new PropertySourcesPlaceholderConfigurer();
+    }
 
     @Bean
     public LocalValidatorFactoryBean validatorFactoryBean() {
         return new LocalValidatorFactoryBean();
     }
+
+    /**
+     * The validator of the orders, used by all the endpoints:
+     * "compiled" - the hand-written OrderValidator, "bean" - Bean Validation (the reflective fallback).
+     */
+    @Bean
+    public Validator orderValidator() {
+        if ("bean".equals(validation)) {
+            return validatorFactoryBean();
+        }
+        return new OrderValidator(validatorFactoryBean());
+    }
+
+    /**
+     * The validator of the @Valid arguments, measured as the validation stage of the request
+     */
+    @Override
+    public Validator getValidator() {
+        return new TimingValidator(orderValidator());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(stageTimingInterceptor);
+    }
+
+    /**
+     * The Jackson module of all the readers of the orders (the message converters and the processors):
+     * interns the codes and the names of the products, disabled if order.json.intern-capacity is 0
+     */
+    @Bean
+    public Module orderJsonModule() {
+        return new InterningModule(internCapacity);
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof AbstractJackson2HttpMessageConverter) {
+                ((AbstractJackson2HttpMessageConverter) converter).getObjectMapper().registerModule(orderJsonModule());
+            }
+        }
+    }
+
+    /**
+     * The executor of the asynchronous order processing (see AsyncOrderProcessor):
+     * "virtual" - a virtual thread per order (Java 21+, the pool is used on older Java versions),
+     * "pool" - the fixed pool with a bounded queue, the order is rejected once the queue is full.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService orderExecutor(@Value("${order.async.executor:pool}") String type,
+                                         @Value("${order.async.threads:16}") int threads,
+                                         @Value("${order.async.queue-capacity:1000}") int queueCapacity) {
+        if ("virtual".equals(type)) {
+            Optional<ExecutorService> virtual = CalculationExecutors.newVirtualThreadPerTaskExecutor();
+            if (virtual.isPresent()) {
+                return virtual.get();
+            }
+            // no virtual threads - fall back to the pool
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "order-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * The pool validating the batches of orders (see BatchOrderProcessor), one worker per core by default
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool batchValidationPool(@Value("${order.batch.parallelism:0}") int parallelism) {
+        return new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
 }
@@ -2,8 +2,10 @@ package org.sbolbin.crpt.config;
 
 import org.springframework.web.WebApplicationInitializer;
 import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.filter.DelegatingFilterProxy;
 import org.springframework.web.servlet.DispatcherServlet;
 
+import javax.servlet.FilterRegistration;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletRegistration;
 
@@ -20,6 +22,18 @@ public class WebInitializer implements WebApplicationInitializer {
 
         ServletRegistration.Dynamic dispatcherServletReg = servletContext.addServlet("dispatcher", dispatcherServlet);
         dispatcherServletReg.setLoadOnStartup(1);
+        dispatcherServletReg.setAsyncSupported(true);
         dispatcherServletReg.addMapping("/");
+
+        // the metrics filter is the first one, so it measures the whole request, see MetricsFilter
+        FilterRegistration.Dynamic metricsFilterReg = servletContext.addFilter("metricsFilter",
+                new DelegatingFilterProxy("metricsFilter", springContext));
+        metricsFilterReg.setAsyncSupported(true);
+        metricsFilterReg.addMappingForUrlPatterns(null, false, "/*");
+
+        // the idempotency filter is the bean of the context, see IdempotencyFilter
+        FilterRegistration.Dynamic idempotencyFilterReg = servletContext.addFilter("idempotencyFilter",
+                new DelegatingFilterProxy("idempotencyFilter", springContext));
+        idempotencyFilterReg.addMappingForUrlPatterns(null, false, "/v1/order");
     }
 }
@@ -0,0 +1,24 @@
+package org.sbolbin.crpt.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.sbolbin.crpt.metrics.RequestMetrics;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+public class MetricsController {
+
+    private static final String PROMETHEUS_VALUE = "text/plain;version=0.0.4;charset=utf-8";
+
+    private final RequestMetrics requestMetrics;
+
+    /**
+     * @return the metrics of the requests in the Prometheus text format, see RequestMetrics
+     */
+    @RequestMapping(path = "/metrics", method = RequestMethod.GET, produces = PROMETHEUS_VALUE)
+    public String metrics() {
+        return requestMetrics.scrape();
+    }
+}
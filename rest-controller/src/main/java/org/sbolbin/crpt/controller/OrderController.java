@@ -1,23 +1,99 @@
 package org.sbolbin.crpt.controller;
 
+import lombok.RequiredArgsConstructor;
 import org.sbolbin.crpt.domain.Order;
+import org.sbolbin.crpt.domain.OrderStatus;
+import org.sbolbin.crpt.service.AsyncOrderProcessor;
+import org.sbolbin.crpt.service.BatchOrderProcessor;
+import org.sbolbin.crpt.service.OrderStreamProcessor;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.validation.BindException;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 
 @RestController
+@RequiredArgsConstructor
 public class OrderController {
 
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final String SMILE_VALUE = "application/x-jackson-smile";
+    private static final String CBOR_VALUE = "application/cbor";
+
+    private final OrderStreamProcessor orderStreamProcessor;
+    private final AsyncOrderProcessor asyncOrderProcessor;
+    private final BatchOrderProcessor batchOrderProcessor;
+
+    /**
+     * The order is accepted as JSON or in the binary Jackson formats (Smile, CBOR), the format of the response
+     * (and of the error response) is negotiated by the Accept header, JSON by default
+     */
     @RequestMapping(
             path = "/v1/order",
             method = RequestMethod.POST,
-            consumes = MediaType.APPLICATION_JSON_VALUE,
-            produces = MediaType.APPLICATION_JSON_VALUE)
+            consumes = {MediaType.APPLICATION_JSON_VALUE, SMILE_VALUE, CBOR_VALUE},
+            produces = {MediaType.APPLICATION_JSON_VALUE, SMILE_VALUE, CBOR_VALUE})
     public Order create(@RequestBody @Valid Order order) {
         return order;
     }
+
+    /**
+     * The same as {@link #create(Order)}, but the order is validated off the container thread
+     * (see AsyncOrderProcessor); 503 is returned if the server is overloaded or the order is not processed in time.
+     */
+    @RequestMapping(
+            path = "/v1/order/async",
+            method = RequestMethod.POST,
+            consumes = {MediaType.APPLICATION_JSON_VALUE, SMILE_VALUE, CBOR_VALUE},
+            produces = {MediaType.APPLICATION_JSON_VALUE, SMILE_VALUE, CBOR_VALUE})
+    public DeferredResult<Order> createAsync(@RequestBody Order order) {
+        return asyncOrderProcessor.process(order);
+    }
+
+    /**
+     * The same as {@link #create(Order)} for the huge orders: the products are read, validated and written
+     * into the response one by one. The status depends on the validation of the last product: the errors are
+     * reported with 400 while the response is not committed yet (its buffer is not full), afterwards the response
+     * is aborted, since 200 is already sent.
+     */
+    @RequestMapping(
+            path = "/v1/order/stream",
+            method = RequestMethod.POST,
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public void createStream(InputStream body, HttpServletResponse response) throws IOException, BindException {
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        try {
+            orderStreamProcessor.process(body, response.getOutputStream());
+        } catch (BindException | HttpMessageNotReadableException e) {
+            if (!response.isCommitted()) {
+                response.resetBuffer(); // the part of the order written before the error
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Validates the orders of the batch in parallel, an invalid order does not fail the batch
+     *
+     * @param body - the JSON array of orders or the NDJSON stream of orders
+     * @return the status of each order, in the order of the batch
+     */
+    @RequestMapping(
+            path = "/v1/orders/batch",
+            method = RequestMethod.POST,
+            consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON_VALUE},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<OrderStatus> createBatch(InputStream body) throws IOException {
+        return batchOrderProcessor.process(body);
+    }
 }
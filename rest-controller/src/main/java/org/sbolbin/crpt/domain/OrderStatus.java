@@ -0,0 +1,17 @@
+package org.sbolbin.crpt.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Value;
+
+import java.util.Map;
+
+/**
+ * The result of a single order of the batch: 200, or 400 with the validation errors
+ * in the format of the POST /v1/order error response
+ */
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OrderStatus {
+    int status;
+    Map<String, String> errors;
+}
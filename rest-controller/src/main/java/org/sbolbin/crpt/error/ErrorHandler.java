@@ -1,76 +1,244 @@
 package org.sbolbin.crpt.error;
 
-import lombok.Value;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.sbolbin.crpt.metrics.RequestMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.validation.BindException;
 import org.springframework.validation.BindingResult;
-import org.springframework.validation.FieldError;
 import org.springframework.web.HttpMediaTypeNotSupportedException;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.NoHandlerFoundException;
 
-import java.util.Map;
-import java.util.TreeMap;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * The rejection of the invalid requests is kept cheaper than their processing: the bodies of the fixed messages
+ * are serialized once, the validation errors are written straight to the response, and the warnings
+ * of the malformed requests are rate limited (at most one per {@code order.error-log.interval-millis}).
+ * The JSON is written directly if the client accepts it (no Accept, any type or JSON),
+ * otherwise the body is converted by the negotiated message converter (Smile, CBOR).
+ * Each branch counts its errors in RequestMetrics.
+ * An error of the committed response (e.g. of a streamed order) can not be reported, the response is aborted.
+ */
 @Slf4j
 @ControllerAdvice
 public class ErrorHandler {
 
+    // the same configuration as the one of the Spring MVC message converter
+    private static final ObjectMapper OBJECT_MAPPER = Jackson2ObjectMapperBuilder.json().build();
+
+    private static final StaticErrorBody NOT_READABLE = new StaticErrorBody("The request body is not a valid JSON");
+    private static final StaticErrorBody UNSUPPORTED_CONTENT_TYPE = new StaticErrorBody("Unsupported Content-Type");
+    private static final StaticErrorBody NOT_FOUND = new StaticErrorBody("Not found");
+    private static final StaticErrorBody SERVICE_UNAVAILABLE = new StaticErrorBody("Service Unavailable");
+    private static final StaticErrorBody TIMED_OUT = new StaticErrorBody("Request timed out");
+    private static final StaticErrorBody INTERNAL_ERROR = new StaticErrorBody("Internal Server Error");
+
+    private final LogRateLimiter invalidBodyLog;
+    private final LogRateLimiter unsupportedMediaTypeLog;
+
+    private final LongAdder validationCounter;
+    private final LongAdder bindCounter;
+    private final LongAdder notReadableCounter;
+    private final LongAdder unsupportedMediaTypeCounter;
+    private final LongAdder notFoundCounter;
+    private final LongAdder responseStatusCounter;
+    private final LongAdder rejectedCounter;
+    private final LongAdder timeoutCounter;
+    private final LongAdder internalCounter;
+
+    public ErrorHandler(@Value("${order.error-log.interval-millis:1000}") long logIntervalMillis,
+                        RequestMetrics metrics) {
+        this.invalidBodyLog = new LogRateLimiter(logIntervalMillis, TimeUnit.MILLISECONDS);
+        this.unsupportedMediaTypeLog = new LogRateLimiter(logIntervalMillis, TimeUnit.MILLISECONDS);
+        this.validationCounter = metrics.errorCounter("validation");
+        this.bindCounter = metrics.errorCounter("bind");
+        this.notReadableCounter = metrics.errorCounter("not_readable");
+        this.unsupportedMediaTypeCounter = metrics.errorCounter("unsupported_media_type");
+        this.notFoundCounter = metrics.errorCounter("not_found");
+        this.responseStatusCounter = metrics.errorCounter("response_status");
+        this.rejectedCounter = metrics.errorCounter("rejected");
+        this.timeoutCounter = metrics.errorCounter("timeout");
+        this.internalCounter = metrics.errorCounter("internal");
+    }
+
     @ExceptionHandler(value = MethodArgumentNotValidException.class)
-    public ResponseEntity<?> handleValidationException(MethodArgumentNotValidException error) {
-        return ResponseEntity
-                .status(HttpStatus.BAD_REQUEST)
-                .body(buildValidationErrorMessage(error));
+    public ResponseEntity<?> handleValidationException(MethodArgumentNotValidException error,
+                                                       HttpServletRequest request,
+                                                       HttpServletResponse response) throws IOException {
+        validationCounter.increment();
+        return validationErrors(error.getBindingResult(), request, response);
+    }
+
+    @ExceptionHandler(value = BindException.class)
+    public ResponseEntity<?> handleBindException(BindException error,
+                                                 HttpServletRequest request,
+                                                 HttpServletResponse response) throws IOException {
+        bindCounter.increment();
+        return validationErrors(error.getBindingResult(), request, response);
     }
 
     @ExceptionHandler(value = HttpMessageNotReadableException.class)
-    public ResponseEntity<?> handleInvalidFormatException(HttpMessageNotReadableException error) {
-        log.warn("Invalid request body", error);
-        return ResponseEntity
-                .status(HttpStatus.BAD_REQUEST)
-                .body(new ErrorResponse("The request body is not a valid JSON"));
+    public ResponseEntity<?> handleInvalidFormatException(HttpMessageNotReadableException error,
+                                                          HttpServletRequest request,
+                                                          HttpServletResponse response) throws IOException {
+        notReadableCounter.increment();
+        if (invalidBodyLog.tryAcquire()) {
+            log.warn("Invalid request body ({} similar warnings suppressed)", invalidBodyLog.takeSuppressed(), error);
+        }
+        return staticError(HttpStatus.BAD_REQUEST, NOT_READABLE, request, response);
     }
 
     @ExceptionHandler(value = HttpMediaTypeNotSupportedException.class)
-    public ResponseEntity<?> handleUnsupportedMediaType(HttpMediaTypeNotSupportedException error) {
-        log.warn("Unsupported content type: {}", error.getContentType());
-        return ResponseEntity
-                .status(HttpStatus.BAD_REQUEST)
-                .body(new ErrorResponse("Unsupported Content-Type"));
+    public ResponseEntity<?> handleUnsupportedMediaType(HttpMediaTypeNotSupportedException error,
+                                                        HttpServletRequest request,
+                                                        HttpServletResponse response) throws IOException {
+        unsupportedMediaTypeCounter.increment();
+        if (unsupportedMediaTypeLog.tryAcquire()) {
+            log.warn("Unsupported content type: {} ({} similar warnings suppressed)",
+                    error.getContentType(), unsupportedMediaTypeLog.takeSuppressed());
+        }
+        return staticError(HttpStatus.BAD_REQUEST, UNSUPPORTED_CONTENT_TYPE, request, response);
     }
 
     @ExceptionHandler(value = {HttpRequestMethodNotSupportedException.class, NoHandlerFoundException.class})
-    public ResponseEntity<?> handleNotFoundException(Exception ignore) {
+    public ResponseEntity<?> handleNotFoundException(Exception ignore,
+                                                     HttpServletRequest request,
+                                                     HttpServletResponse response) throws IOException {
+        notFoundCounter.increment();
+        return staticError(HttpStatus.NOT_FOUND, NOT_FOUND, request, response);
+    }
+
+    @ExceptionHandler(value = ResponseStatusException.class)
+    public ResponseEntity<?> handleResponseStatusException(ResponseStatusException error) {
+        responseStatusCounter.increment();
         return ResponseEntity
-                .status(HttpStatus.NOT_FOUND)
-                .body(new ErrorResponse("Not found"));
+                .status(error.getStatus())
+                .body(new ErrorResponse(error.getReason()));
+    }
+
+    @ExceptionHandler(value = RejectedExecutionException.class)
+    public ResponseEntity<?> handleOverload(RejectedExecutionException error,
+                                            HttpServletRequest request,
+                                            HttpServletResponse response) throws IOException {
+        rejectedCounter.increment();
+        log.warn("Request rejected: {}", error.getMessage());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        return staticError(HttpStatus.SERVICE_UNAVAILABLE, SERVICE_UNAVAILABLE, request, response);
+    }
+
+    @ExceptionHandler(value = AsyncRequestTimeoutException.class)
+    public ResponseEntity<?> handleTimeout(AsyncRequestTimeoutException ignore,
+                                           HttpServletRequest request,
+                                           HttpServletResponse response) throws IOException {
+        timeoutCounter.increment();
+        return staticError(HttpStatus.SERVICE_UNAVAILABLE, TIMED_OUT, request, response);
     }
 
     @ExceptionHandler(value = Throwable.class)
-    public ResponseEntity<?> handleGeneralException(Throwable error) {
+    public ResponseEntity<?> handleGeneralException(Throwable error,
+                                                    HttpServletRequest request,
+                                                    HttpServletResponse response) throws IOException {
+        internalCounter.increment();
         log.error("Unexpected error: ", error);
-        return ResponseEntity
-                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(new ErrorResponse("Internal Server Error"));
+        return staticError(HttpStatus.INTERNAL_SERVER_ERROR, INTERNAL_ERROR, request, response);
+    }
+
+    /**
+     * @return null if the body is written to the response, otherwise the response to be converted
+     */
+    private static ResponseEntity<?> staticError(HttpStatus status, StaticErrorBody body,
+                                                 HttpServletRequest request,
+                                                 HttpServletResponse response) throws IOException {
+        requireNotCommitted(response);
+        if (!acceptsJson(request)) {
+            return ResponseEntity.status(status).body(body.response);
+        }
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        response.setContentLength(body.json.length);
+        response.getOutputStream().write(body.json);
+        return null;
+    }
+
+    /**
+     * @return null if the errors are written to the response, otherwise the response to be converted
+     */
+    private static ResponseEntity<?> validationErrors(BindingResult bindingResult,
+                                                      HttpServletRequest request,
+                                                      HttpServletResponse response) throws IOException {
+        requireNotCommitted(response);
+        if (!acceptsJson(request)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ValidationErrors.toMap(bindingResult));
+        }
+        response.setStatus(HttpStatus.BAD_REQUEST.value());
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(response.getOutputStream())) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            ValidationErrors.write(bindingResult, generator);
+        }
+        return null;
     }
 
-    private Map<String, String> buildValidationErrorMessage(MethodArgumentNotValidException error) {
-        BindingResult bindingResult = error.getBindingResult();
-        Map<String, String> map = new TreeMap<>();
-        for (FieldError fieldError : bindingResult.getFieldErrors()) {
-            map.put(fieldError.getField(), fieldError.getDefaultMessage());
+    /**
+     * @throws IllegalStateException if the status is already sent, so the original error reaches the container,
+     * which aborts the response instead of appending the error body to it
+     */
+    private static void requireNotCommitted(HttpServletResponse response) {
+        if (response.isCommitted()) {
+            throw new IllegalStateException("The response is already committed");
         }
+    }
 
-        return map;
+    /**
+     * @return true if the negotiated response type is surely JSON, every endpoint produces JSON first
+     */
+    private static boolean acceptsJson(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return accept == null
+                || MediaType.ALL_VALUE.equals(accept)
+                || (accept.startsWith(MediaType.APPLICATION_JSON_VALUE) && accept.indexOf(',') < 0);
     }
 
-    @Value
+    @lombok.Value
     public static class ErrorResponse {
         String message;
     }
+
+    /**
+     * The error response of a fixed message, serialized to JSON once
+     */
+    private static final class StaticErrorBody {
+        private final ErrorResponse response;
+        private final byte[] json;
+
+        StaticErrorBody(String message) {
+            this.response = new ErrorResponse(message);
+            try {
+                this.json = OBJECT_MAPPER.writeValueAsBytes(response);
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package org.sbolbin.crpt.error;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Allows at most one log event per interval and counts the suppressed ones, lock-free
+ */
+final class LogRateLimiter {
+
+    private final long intervalNanos;
+    private final AtomicLong nextAllowed = new AtomicLong(System.nanoTime());
+    private final LongAdder suppressed = new LongAdder();
+
+    LogRateLimiter(long interval, TimeUnit unit) {
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    /**
+     * @return true if the event may be logged, false if it is suppressed
+     */
+    boolean tryAcquire() {
+        long now = System.nanoTime();
+        long allowed = nextAllowed.get();
+        if (now - allowed < 0 || !nextAllowed.compareAndSet(allowed, now + intervalNanos)) {
+            suppressed.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of the events suppressed since the previous call
+     */
+    long takeSuppressed() {
+        return suppressed.sumThenReset();
+    }
+}
@@ -0,0 +1,50 @@
+package org.sbolbin.crpt.error;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.FieldError;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The body of the validation error response: the messages by the field paths, sorted by the path
+ */
+public final class ValidationErrors {
+
+    private static final Comparator<FieldError> BY_FIELD = Comparator.comparing(FieldError::getField);
+
+    private ValidationErrors() {
+    }
+
+    public static Map<String, String> toMap(BindingResult bindingResult) {
+        Map<String, String> map = new TreeMap<>();
+        for (FieldError fieldError : bindingResult.getFieldErrors()) {
+            map.put(fieldError.getField(), fieldError.getDefaultMessage());
+        }
+
+        return map;
+    }
+
+    /**
+     * Writes the same JSON object as {@link #toMap(BindingResult)} without building the map:
+     * the errors are sorted by the field, the last error of a field wins
+     */
+    public static void write(BindingResult bindingResult, JsonGenerator generator) throws IOException {
+        FieldError[] fieldErrors = bindingResult.getFieldErrors().toArray(new FieldError[0]);
+        if (fieldErrors.length > 1) {
+            Arrays.sort(fieldErrors, BY_FIELD);
+        }
+        generator.writeStartObject();
+        for (int i = 0; i < fieldErrors.length; i++) {
+            if (i + 1 < fieldErrors.length && fieldErrors[i + 1].getField().equals(fieldErrors[i].getField())) {
+                continue;
+            }
+            generator.writeStringField(fieldErrors[i].getField(), fieldErrors[i].getDefaultMessage());
+        }
+        generator.writeEndObject();
+    }
+}
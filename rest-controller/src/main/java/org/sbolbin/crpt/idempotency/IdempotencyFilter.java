@@ -0,0 +1,256 @@
+package org.sbolbin.crpt.idempotency;
+
+import org.sbolbin.crpt.concurrent.CacheableFunctionExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Makes the order submission idempotent by the Idempotency-Key header: the first request with the key is processed,
+ * the concurrent requests with the same key wait for it, and the later ones get its stored response.
+ * The response is stored with the fingerprint of the request (SHA-256 of the method, the URI and the body,
+ * the body is hashed while it is read, not buffered): the request with the same key and another fingerprint
+ * gets 422 instead of the response of a different request.
+ * <p>
+ * The responses are kept in CacheableFunctionExecutor, bounded by the total size of the stored bodies and by
+ * the retention time. The response is calculated on the thread of the first request (the direct executor);
+ * only the 2xx responses are stored, the others are shared with the concurrent requests only,
+ * so the retry after a client or a server error is processed again.
+ * Requests without the key are processed as is.
+ */
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final byte[] KEY_REUSED = "{\"message\":\"The Idempotency-Key is used by another request\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final CacheableFunctionExecutor<String, StoredResponse> responses;
+
+    public IdempotencyFilter(@Value("${order.idempotency.max-bytes:67108864}") long maxBytes,
+                             @Value("${order.idempotency.ttl-seconds:3600}") long ttlSeconds) {
+        this.responses = CacheableFunctionExecutor.<String, StoredResponse>builder()
+                .executor(Runnable::run)
+                .maximumWeight(maxBytes, (key, response) -> ENTRY_OVERHEAD + 2 * key.length() + response.body.length)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key = request.getHeader(IDEMPOTENCY_KEY);
+        if (key == null || !"POST".equals(request.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Submission submission = new Submission(new FingerprintingRequest(request), response, chain);
+        Future<StoredResponse> future = responses.calculate(key, submission);
+        StoredResponse stored;
+        try {
+            stored = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException("Interrupted while waiting for the request with the same " + IDEMPOTENCY_KEY, e);
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof NotStoredException)) {
+                throw unwrap(e.getCause());
+            }
+            stored = ((NotStoredException) e.getCause()).response;
+        }
+
+        if (submission.processed != null) {
+            submission.processed.copyBodyToResponse();
+            return;
+        }
+        FingerprintingRequest repeated = new FingerprintingRequest(request);
+        if (MessageDigest.isEqual(repeated.fingerprint(), stored.fingerprint)) {
+            stored.writeTo(response);
+        } else {
+            response.setStatus(HttpStatus.UNPROCESSABLE_ENTITY.value());
+            response.setContentType("application/json");
+            response.setContentLength(KEY_REUSED.length);
+            response.getOutputStream().write(KEY_REUSED);
+        }
+    }
+
+    private static ServletException unwrap(Throwable error) throws IOException {
+        Throwable cause = error instanceof ProcessingException ? error.getCause() : error;
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof ServletException) {
+            return (ServletException) cause;
+        }
+        return new ServletException(cause);
+    }
+
+    /**
+     * Processes the request with the key, on the thread of the request
+     */
+    private static final class Submission implements Function<String, StoredResponse> {
+        private final FingerprintingRequest request;
+        private final HttpServletResponse response;
+        private final FilterChain chain;
+        // the response of the processed request, null if the request waited for the stored response
+        private ContentCachingResponseWrapper processed;
+
+        Submission(FingerprintingRequest request, HttpServletResponse response, FilterChain chain) {
+            this.request = request;
+            this.response = response;
+            this.chain = chain;
+        }
+
+        @Override
+        public StoredResponse apply(String key) {
+            processed = new ContentCachingResponseWrapper(response);
+            byte[] fingerprint;
+            try {
+                chain.doFilter(request, processed);
+                fingerprint = request.fingerprint();
+            } catch (IOException | ServletException e) {
+                throw new ProcessingException(e);
+            }
+            StoredResponse stored = new StoredResponse(processed.getStatus(), processed.getContentType(),
+                    processed.getContentAsByteArray(), fingerprint);
+            if (stored.status / 100 != 2) {
+                throw new NotStoredException(stored);
+            }
+            return stored;
+        }
+    }
+
+    private static final class StoredResponse {
+        private final int status;
+        private final String contentType;
+        private final byte[] body;
+        private final byte[] fingerprint;
+
+        StoredResponse(int status, String contentType, byte[] body, byte[] fingerprint) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+            this.fingerprint = fingerprint;
+        }
+
+        void writeTo(HttpServletResponse response) throws IOException {
+            response.setStatus(status);
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    /**
+     * Hashes the method, the URI and the body of the request, the body is hashed as the chain reads it
+     */
+    private static final class FingerprintingRequest extends HttpServletRequestWrapper {
+        private final MessageDigest digest;
+        private ServletInputStream inputStream;
+
+        FingerprintingRequest(HttpServletRequest request) {
+            super(request);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            String query = request.getQueryString();
+            String target = request.getMethod() + ' ' + request.getRequestURI() + (query == null ? "" : '?' + query);
+            digest.update(target.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                InputStream body = super.getInputStream();
+                inputStream = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        int b = body.read();
+                        if (b >= 0) {
+                            digest.update((byte) b);
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException {
+                        int read = body.read(buffer, offset, length);
+                        if (read > 0) {
+                            digest.update(buffer, offset, read);
+                        }
+                        return read;
+                    }
+                };
+            }
+            return inputStream;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding == null ? StandardCharsets.ISO_8859_1.name() : encoding));
+        }
+
+        /**
+         * Reads the rest of the body
+         */
+        byte[] fingerprint() throws IOException {
+            InputStream body = getInputStream();
+            byte[] buffer = new byte[8192];
+            while (body.read(buffer, 0, buffer.length) >= 0) {
+                // the bytes are hashed by the stream
+            }
+            return digest.digest();
+        }
+    }
+
+    /**
+     * The response shared with the concurrent requests, but not stored for the later ones
+     */
+    private static final class NotStoredException extends RuntimeException {
+        private final transient StoredResponse response;
+
+        NotStoredException(StoredResponse response) {
+            super(null, null, false, false);
+            this.response = response;
+        }
+    }
+
+    private static final class ProcessingException extends RuntimeException {
+        ProcessingException(Exception cause) {
+            super(cause);
+        }
+    }
+}
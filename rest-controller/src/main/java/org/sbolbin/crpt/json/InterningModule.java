@@ -0,0 +1,98 @@
+package org.sbolbin.crpt.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBuilder;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.sbolbin.crpt.domain.Product;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Interns the string fields (the code and the name) of the deserialized products, see StringInterner:
+ * the codes and the names repeated across the orders share a single String instead of a new one per order.
+ * Only the deserialization is affected, the values and so the output are the same.
+ * With zero capacity the module does nothing.
+ */
+public class InterningModule extends SimpleModule {
+
+    private static final int MAX_INTERNED_LENGTH = 64;
+
+    // shared by all the mappers the module is registered in
+    private final InterningStringDeserializer deserializer;
+
+    /**
+     * @param capacity - the number of the interned strings, 0 to disable the interning
+     */
+    public InterningModule(int capacity) {
+        super("InterningModule");
+        this.deserializer = capacity > 0
+                ? new InterningStringDeserializer(new StringInterner(capacity, MAX_INTERNED_LENGTH))
+                : null;
+    }
+
+    @Override
+    public void setupModule(SetupContext context) {
+        super.setupModule(context);
+        if (deserializer != null) {
+            context.addBeanDeserializerModifier(new ProductModifier(deserializer));
+        }
+    }
+
+    private static final class ProductModifier extends BeanDeserializerModifier {
+        private final InterningStringDeserializer deserializer;
+
+        ProductModifier(InterningStringDeserializer deserializer) {
+            this.deserializer = deserializer;
+        }
+
+        @Override
+        public BeanDeserializerBuilder updateBuilder(DeserializationConfig config, BeanDescription beanDescription,
+                                                     BeanDeserializerBuilder builder) {
+            if (beanDescription.getBeanClass() != Product.class) {
+                return builder;
+            }
+            List<SettableBeanProperty> strings = new ArrayList<>();
+            for (Iterator<SettableBeanProperty> properties = builder.getProperties(); properties.hasNext(); ) {
+                SettableBeanProperty property = properties.next();
+                if (property.getType().hasRawClass(String.class) && !property.hasValueDeserializer()) {
+                    strings.add(property);
+                }
+            }
+            for (SettableBeanProperty property : strings) {
+                builder.addOrReplaceProperty(property.withValueDeserializer(deserializer), true);
+            }
+            return builder;
+        }
+    }
+
+    /**
+     * Reads the string value through the interner, the other tokens as the default String deserializer does
+     */
+    private static final class InterningStringDeserializer extends StdScalarDeserializer<String> {
+        private final transient StringInterner interner;
+
+        InterningStringDeserializer(StringInterner interner) {
+            super(String.class);
+            this.interner = interner;
+        }
+
+        @Override
+        public String deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.hasToken(JsonToken.VALUE_STRING)) {
+                return interner.intern(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            }
+            return StringDeserializer.instance.deserialize(parser, context);
+        }
+    }
+}
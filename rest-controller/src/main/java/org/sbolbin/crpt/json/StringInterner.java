@@ -0,0 +1,63 @@
+package org.sbolbin.crpt.json;
+
+/**
+ * Bounded concurrent interner of short strings, looked up by the characters of the parser buffer,
+ * so the repeated value allocates nothing.
+ * <p>
+ * The table is direct-mapped: each string has a single slot, the colliding string replaces it,
+ * so the memory is bounded by the capacity and the maximum length. Lock-free: the slots are read and written
+ * without synchronization, which is safe since String is immutable (final fields); a lost write only costs a miss.
+ */
+public final class StringInterner {
+
+    private final String[] table;
+    private final int mask;
+    private final int maxLength;
+
+    /**
+     * @param capacity - the number of the slots, rounded up to a power of two
+     * @param maxLength - the longer strings are not interned
+     */
+    public StringInterner(int capacity, int maxLength) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.table = new String[size];
+        this.mask = size - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return the string of the given characters, the same instance for the same characters while it is cached
+     */
+    public String intern(char[] chars, int offset, int length) {
+        if (length > maxLength) {
+            return new String(chars, offset, length);
+        }
+        int hash = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int index = (hash ^ (hash >>> 16)) & mask;
+        String cached = table[index];
+        if (cached != null && matches(cached, chars, offset, length)) {
+            return cached;
+        }
+        String created = new String(chars, offset, length);
+        table[index] = created;
+        return created;
+    }
+
+    private static boolean matches(String value, char[] chars, int offset, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,83 @@
+package org.sbolbin.crpt.metrics;
+
+/**
+ * The metrics of the requests of one URI pattern
+ */
+final class EndpointMetrics {
+
+    private static final int STATUS_CLASSES = 5;
+
+    private final String labels;
+    private final String[] statusLabels = new String[STATUS_CLASSES];
+    private final String[] stageLabels = new String[Stage.values().length];
+    private final Histogram[] durations = new Histogram[STATUS_CLASSES];
+    private final Histogram[] stages = new Histogram[Stage.values().length];
+    private final Histogram requestSizes = Histogram.size();
+    private final Histogram responseSizes = Histogram.size();
+
+    EndpointMetrics(String uri) {
+        this.labels = "uri=\"" + escape(uri) + "\"";
+        for (int i = 0; i < STATUS_CLASSES; i++) {
+            statusLabels[i] = labels + ",status=\"" + (i + 1) + "xx\"";
+            durations[i] = Histogram.latency();
+        }
+        for (Stage stage : Stage.values()) {
+            stageLabels[stage.ordinal()] = labels + ",stage=\"" + stage.name().toLowerCase() + "\"";
+            stages[stage.ordinal()] = Histogram.latency();
+        }
+    }
+
+    /**
+     * @param status - the status of the response
+     * @param durationNanos - the time from the request received to the response completed
+     * @param requestBytes - the declared length of the request body, -1 if unknown
+     * @param responseBytes - the bytes of the response body, -1 if unknown
+     */
+    void recordRequest(int status, long durationNanos, long requestBytes, long responseBytes) {
+        int statusClass = Math.min(Math.max(status / 100, 1), STATUS_CLASSES) - 1;
+        durations[statusClass].record(durationNanos);
+        if (requestBytes >= 0) {
+            requestSizes.record(requestBytes);
+        }
+        if (responseBytes >= 0) {
+            responseSizes.record(responseBytes);
+        }
+    }
+
+    void recordStage(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    void writeDurations(StringBuilder out, String name) {
+        for (int i = 0; i < STATUS_CLASSES; i++) {
+            writeIfRecorded(out, name, statusLabels[i], durations[i]);
+        }
+    }
+
+    void writeStages(StringBuilder out, String name) {
+        for (int i = 0; i < stages.length; i++) {
+            writeIfRecorded(out, name, stageLabels[i], stages[i]);
+        }
+    }
+
+    void writeRequestSizes(StringBuilder out, String name) {
+        writeIfRecorded(out, name, labels, requestSizes);
+    }
+
+    void writeResponseSizes(StringBuilder out, String name) {
+        writeIfRecorded(out, name, labels, responseSizes);
+    }
+
+    /**
+     * The series never recorded are omitted, e.g. the 1xx responses
+     */
+    private static void writeIfRecorded(StringBuilder out, String name, String labels, Histogram histogram) {
+        if (histogram.count() > 0) {
+            histogram.write(out, name, labels);
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,101 @@
+package org.sbolbin.crpt.metrics;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The histogram of the fixed buckets, in the Prometheus form: the count of each bucket, the sum and the count.
+ * A value is recorded by incrementing the counter of its bucket, without locks and allocation
+ * (LongAdder per bucket, so the concurrent requests do not contend on the same counter).
+ */
+public final class Histogram {
+
+    private static final long[] LATENCY_BOUNDS_NANOS = {
+            100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000,
+            10_000_000, 25_000_000, 50_000_000,
+            100_000_000, 250_000_000, 500_000_000,
+            1_000_000_000, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L};
+
+    private static final long[] SIZE_BOUNDS_BYTES = {
+            128, 512, 2 << 10, 8 << 10, 32 << 10, 128 << 10, 512 << 10, 2 << 20, 8 << 20, 32 << 20};
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long[] bounds;
+    private final double unit;
+    private final String[] upperBounds;
+    private final LongAdder[] counts;
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param bounds - the inclusive upper bounds of the buckets, ascending; the last bucket is unbounded
+     * @param unit - the exposed unit in the recorded ones, e.g. 1e9 for the nanoseconds exposed as seconds
+     */
+    Histogram(long[] bounds, double unit) {
+        this.bounds = bounds.clone();
+        this.unit = unit;
+        this.upperBounds = new String[bounds.length + 1];
+        for (int i = 0; i < bounds.length; i++) {
+            upperBounds[i] = format(bounds[i] / unit);
+        }
+        upperBounds[bounds.length] = "+Inf";
+        this.counts = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return the histogram of the latencies recorded in nanoseconds and exposed in seconds, from 100µs to 10s
+     */
+    static Histogram latency() {
+        return new Histogram(LATENCY_BOUNDS_NANOS, NANOS_PER_SECOND);
+    }
+
+    /**
+     * @return the histogram of the sizes in bytes, from 128B to 32MB
+     */
+    static Histogram size() {
+        return new Histogram(SIZE_BOUNDS_BYTES, 1);
+    }
+
+    public void record(long value) {
+        int index = Arrays.binarySearch(bounds, value);
+        counts[index >= 0 ? index : -index - 1].increment();
+        sum.add(value);
+    }
+
+    long count() {
+        long count = 0;
+        for (LongAdder bucket : counts) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Writes the series of the histogram in the Prometheus text format
+     *
+     * @param name - the name of the metric
+     * @param labels - the labels of the series, e.g. uri="/v1/order", empty if none
+     */
+    void write(StringBuilder out, String name, String labels) {
+        String separator = labels.isEmpty() ? "" : ",";
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i].sum();
+            out.append(name).append("_bucket{").append(labels).append(separator)
+                    .append("le=\"").append(upperBounds[i]).append("\"} ").append(cumulative).append('\n');
+        }
+        String series = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(series).append(' ').append(format(sum.sum() / unit)).append('\n');
+        out.append(name).append("_count").append(series).append(' ').append(cumulative).append('\n');
+    }
+
+    private static String format(double value) {
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,142 @@
+package org.sbolbin.crpt.metrics;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+
+/**
+ * Measures the whole request: the duration, the declared length of the request body and the bytes written
+ * to the response output stream. The first filter of the chain, so the stored idempotent responses are measured too.
+ * The async request is measured once it is completed.
+ */
+@Component
+public class MetricsFilter extends OncePerRequestFilter {
+
+    private final RequestMetrics metrics;
+
+    public MetricsFilter(RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        CountingResponse countingResponse = new CountingResponse(response);
+        try {
+            chain.doFilter(request, countingResponse);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new CompletionListener(request, countingResponse, start));
+            } else {
+                record(request, countingResponse, start);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, CountingResponse response, long start) {
+        long duration = System.nanoTime() - start;
+        String uri = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        metrics.endpoint(uri).recordRequest(response.getStatus(), duration,
+                request.getContentLength(), response.bytesWritten());
+    }
+
+    private final class CompletionListener implements AsyncListener {
+        private final HttpServletRequest request;
+        private final CountingResponse response;
+        private final long start;
+
+        CompletionListener(HttpServletRequest request, CountingResponse response, long start) {
+            this.request = request;
+            this.response = response;
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            record(request, response, start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // the timeout response completes the request
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            // the error response completes the request
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // the same request
+        }
+    }
+
+    /**
+     * Counts the bytes written to the output stream; the response written by the writer is not counted
+     */
+    private static final class CountingResponse extends HttpServletResponseWrapper {
+        private CountingOutputStream outputStream;
+
+        CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new CountingOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        /**
+         * @return the bytes written to the output stream, -1 if the output stream is not used
+         */
+        long bytesWritten() {
+            return outputStream == null ? -1 : outputStream.count;
+        }
+    }
+
+    private static final class CountingOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+        private long count;
+
+        CountingOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
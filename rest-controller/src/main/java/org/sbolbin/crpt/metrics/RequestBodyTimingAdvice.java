@@ -0,0 +1,43 @@
+package org.sbolbin.crpt.metrics;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import java.lang.reflect.Type;
+
+/**
+ * Measures the read stage: the conversion of the @RequestBody by the message converter.
+ * The body failed to be converted is not measured.
+ */
+@ControllerAdvice
+public class RequestBodyTimingAdvice extends RequestBodyAdviceAdapter {
+
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType,
+                            Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public HttpInputMessage beforeBodyRead(HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                           Class<? extends HttpMessageConverter<?>> converterType) {
+        StageTimer timer = StageTimer.current();
+        if (timer != null) {
+            timer.startStage();
+        }
+        return inputMessage;
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter,
+                                Type targetType, Class<? extends HttpMessageConverter<?>> converterType) {
+        StageTimer timer = StageTimer.current();
+        if (timer != null) {
+            timer.endStage(Stage.READ);
+        }
+        return body;
+    }
+}
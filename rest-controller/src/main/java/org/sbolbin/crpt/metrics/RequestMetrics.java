@@ -0,0 +1,84 @@
+package org.sbolbin.crpt.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of the requests, exposed by GET /metrics in the Prometheus text format:
+ * <ul>
+ *     <li>the request duration by the URI pattern and the status class (MetricsFilter)</li>
+ *     <li>the duration of the stages of the request by the URI pattern (see Stage)</li>
+ *     <li>the request and the response body sizes by the URI pattern (MetricsFilter)</li>
+ *     <li>the errors by the branch of ErrorHandler</li>
+ * </ul>
+ * The URI is the pattern of the handler, so the number of the series is bounded by the number of the endpoints;
+ * the requests not routed to a handler (not found, the stored idempotent responses) are reported as "none".
+ */
+@Component
+public class RequestMetrics {
+
+    static final String NO_HANDLER = "none";
+
+    private static final String DURATION = "http_server_request_duration_seconds";
+    private static final String STAGE = "http_server_request_stage_seconds";
+    private static final String REQUEST_SIZE = "http_server_request_size_bytes";
+    private static final String RESPONSE_SIZE = "http_server_response_size_bytes";
+    private static final String ERRORS = "http_server_errors_total";
+
+    private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    /**
+     * @param uri - the URI pattern of the handler, null if the request is not routed to a handler
+     */
+    EndpointMetrics endpoint(String uri) {
+        String key = uri == null ? NO_HANDLER : uri;
+        EndpointMetrics endpoint = endpoints.get(key);
+        return endpoint != null ? endpoint : endpoints.computeIfAbsent(key, EndpointMetrics::new);
+    }
+
+    /**
+     * @param branch - the name of the error, e.g. not_readable
+     * @return the counter of the errors, registered once by the error handler
+     */
+    public LongAdder errorCounter(String branch) {
+        return errors.computeIfAbsent(branch, ignore -> new LongAdder());
+    }
+
+    /**
+     * @return all the metrics in the Prometheus text format (version 0.0.4)
+     */
+    public String scrape() {
+        Map<String, EndpointMetrics> sorted = new TreeMap<>(endpoints);
+        StringBuilder out = new StringBuilder(8192);
+
+        header(out, DURATION, "histogram",
+                "The time from the request received to the response completed, by the URI pattern and the status");
+        sorted.values().forEach(endpoint -> endpoint.writeDurations(out, DURATION));
+
+        header(out, STAGE, "histogram",
+                "The time of the stage of the request (read, validation, handler, write), by the URI pattern");
+        sorted.values().forEach(endpoint -> endpoint.writeStages(out, STAGE));
+
+        header(out, REQUEST_SIZE, "histogram", "The declared length of the request body, by the URI pattern");
+        sorted.values().forEach(endpoint -> endpoint.writeRequestSizes(out, REQUEST_SIZE));
+
+        header(out, RESPONSE_SIZE, "histogram", "The bytes of the response body, by the URI pattern");
+        sorted.values().forEach(endpoint -> endpoint.writeResponseSizes(out, RESPONSE_SIZE));
+
+        header(out, ERRORS, "counter", "The error responses, by the branch of the error handler");
+        new TreeMap<>(errors).forEach((branch, counter) -> out.append(ERRORS).append("{branch=\"").append(branch)
+                .append("\"} ").append(counter.sum()).append('\n'));
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+}
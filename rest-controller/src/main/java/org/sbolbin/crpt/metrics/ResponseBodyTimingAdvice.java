@@ -0,0 +1,33 @@
+package org.sbolbin.crpt.metrics;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Ends the handler stage and starts the write stage once the controller returned the body.
+ * The bodies of the exception handlers are not measured, they are counted by the error branch.
+ */
+@ControllerAdvice
+public class ResponseBodyTimingAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return !returnType.getContainingClass().isAnnotationPresent(ControllerAdvice.class);
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        StageTimer timer = StageTimer.current();
+        if (timer != null) {
+            timer.startWrite();
+        }
+        return body;
+    }
+}
@@ -0,0 +1,16 @@
+package org.sbolbin.crpt.metrics;
+
+/**
+ * The stages of the request handled by a controller, in the order of the processing
+ */
+public enum Stage {
+    /** the conversion of the @RequestBody */
+    READ,
+    /** the validation of the @Valid argument */
+    VALIDATION,
+    /** the controller, from the end of the previous stage to the returned value; includes the response writing
+     * of the controllers writing the response themselves */
+    HANDLER,
+    /** the conversion of the returned value into the response */
+    WRITE
+}
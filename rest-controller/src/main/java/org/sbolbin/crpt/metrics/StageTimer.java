@@ -0,0 +1,59 @@
+package org.sbolbin.crpt.metrics;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * The timing of the stages of a request, kept in the request attribute by StageTimingInterceptor.
+ * Each stage is measured from its start (or from the end of the previous stage) to its end, see Stage.
+ * The hooks of the stages run on the thread of the request (the container thread or the async dispatch).
+ */
+final class StageTimer {
+
+    static final String ATTRIBUTE = StageTimer.class.getName();
+
+    private final EndpointMetrics endpoint;
+    private long mark = System.nanoTime();
+    private boolean writing;
+
+    StageTimer(EndpointMetrics endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * @return the timer of the request of the current thread, null outside of a request handled by a controller
+     */
+    static StageTimer current() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes == null
+                ? null : (StageTimer) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    void startStage() {
+        mark = System.nanoTime();
+    }
+
+    /**
+     * Records the stage from its start (or the end of the previous stage) to now
+     */
+    void endStage(Stage stage) {
+        long now = System.nanoTime();
+        endpoint.recordStage(stage, now - mark);
+        mark = now;
+    }
+
+    /**
+     * Ends the handler stage, once the controller returned the value to be written
+     */
+    void startWrite() {
+        endStage(Stage.HANDLER);
+        writing = true;
+    }
+
+    /**
+     * Ends the write stage, or the handler stage if the controller has written the response itself
+     */
+    void endHandling() {
+        endStage(writing ? Stage.WRITE : Stage.HANDLER);
+    }
+}
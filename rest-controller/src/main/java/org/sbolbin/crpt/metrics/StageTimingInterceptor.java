@@ -0,0 +1,44 @@
+package org.sbolbin.crpt.metrics;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Starts the timing of the stages of the request once the handler is found, and ends it after the handler.
+ * The timer is created on the first dispatch and kept for the async dispatch of the same request.
+ */
+@Component
+public class StageTimingInterceptor implements HandlerInterceptor {
+
+    private final RequestMetrics metrics;
+
+    public StageTimingInterceptor(RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(StageTimer.ATTRIBUTE) == null) {
+            String uri = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            request.setAttribute(StageTimer.ATTRIBUTE, new StageTimer(metrics.endpoint(uri)));
+        }
+        return true;
+    }
+
+    /**
+     * Not called if the handler failed or started the async processing
+     */
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+                           ModelAndView modelAndView) {
+        StageTimer timer = (StageTimer) request.getAttribute(StageTimer.ATTRIBUTE);
+        if (timer != null) {
+            timer.endHandling();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.sbolbin.crpt.metrics;
+
+import org.springframework.validation.Errors;
+import org.springframework.validation.SmartValidator;
+import org.springframework.validation.Validator;
+
+/**
+ * Measures the validation stage of the @Valid arguments; the validation outside of a request
+ * (the async and the batch processing) is not measured
+ */
+public class TimingValidator implements SmartValidator {
+
+    private final Validator delegate;
+
+    /**
+     * @param delegate - the validator of the arguments, the validation hints are passed to a SmartValidator
+     */
+    public TimingValidator(Validator delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean supports(Class<?> clazz) {
+        return delegate.supports(clazz);
+    }
+
+    @Override
+    public void validate(Object target, Errors errors) {
+        validate(target, errors, (Object[]) null);
+    }
+
+    @Override
+    public void validate(Object target, Errors errors, Object... validationHints) {
+        StageTimer timer = StageTimer.current();
+        if (timer != null) {
+            timer.startStage();
+        }
+        try {
+            if (validationHints != null && delegate instanceof SmartValidator) {
+                ((SmartValidator) delegate).validate(target, errors, validationHints);
+            } else {
+                delegate.validate(target, errors);
+            }
+        } finally {
+            if (timer != null) {
+                timer.endStage(Stage.VALIDATION);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.sbolbin.crpt.service;
+
+import org.sbolbin.crpt.domain.Order;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindException;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.Validator;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Processes the order off the container thread: the validation runs on the order executor
+ * (see ApplicationConfig#orderExecutor), the container thread is released as soon as the request is read.
+ * <p>
+ * The number of orders in flight is limited: above the limit the order is rejected with RejectedExecutionException
+ * (503, load shedding), so the queue of the executor does not grow unbounded under overload.
+ * The order not processed in time completes with AsyncRequestTimeoutException (503).
+ */
+@Component
+public class AsyncOrderProcessor {
+
+    private final Executor executor;
+    private final Validator validator;
+    private final Semaphore inFlight;
+    private final long timeoutMillis;
+
+    public AsyncOrderProcessor(@Qualifier("orderExecutor") Executor executor,
+                               @Qualifier("orderValidator") Validator validator,
+                               @Value("${order.async.max-in-flight:1000}") int maxInFlight,
+                               @Value("${order.async.timeout-millis:5000}") long timeoutMillis) {
+        this.executor = executor;
+        this.validator = validator;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the result completed with the validated order, or with BindException if the order is not valid
+     *
+     * @throws RejectedExecutionException if too many orders are in flight or the executor is saturated
+     */
+    public DeferredResult<Order> process(Order order) {
+        if (!inFlight.tryAcquire()) {
+            throw new RejectedExecutionException("Too many orders in flight");
+        }
+        DeferredResult<Order> result = new DeferredResult<>(timeoutMillis);
+        result.onTimeout(() -> result.setErrorResult(new AsyncRequestTimeoutException()));
+        try {
+            executor.execute(() -> {
+                try {
+                    BindingResult errors = new BeanPropertyBindingResult(order, "order");
+                    validator.validate(order, errors);
+                    if (errors.hasErrors()) {
+                        result.setErrorResult(new BindException(errors));
+                    } else {
+                        result.setResult(order);
+                    }
+                } catch (Throwable error) {
+                    result.setErrorResult(error);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+        return result;
+    }
+}
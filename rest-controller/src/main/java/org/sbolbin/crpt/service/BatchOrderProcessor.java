@@ -0,0 +1,165 @@
+package org.sbolbin.crpt.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.sbolbin.crpt.domain.Order;
+import org.sbolbin.crpt.domain.OrderStatus;
+import org.sbolbin.crpt.error.ValidationErrors;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.Validator;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Validates the batch of orders in parallel: the orders are parsed one by one, each chunk of parsed orders
+ * is validated on the batch validation pool (see ApplicationConfig#batchValidationPool, one worker per core
+ * by default) while the next chunk is being parsed.
+ * An invalid order does not fail the batch, each order gets its own status: the order that cannot be mapped
+ * (e.g. a field of a wrong type) or a null one is invalid as well. Only the input that is not valid JSON
+ * fails the whole batch.
+ */
+@Component
+public class BatchOrderProcessor {
+
+    private static final OrderStatus OK = new OrderStatus(HttpStatus.OK.value(), null);
+    private static final int CHUNK_SIZE = 64;
+    private static final String NOT_READABLE = "The request body is not a valid JSON";
+    private static final OrderStatus NULL_ORDER = new OrderStatus(HttpStatus.BAD_REQUEST.value(),
+            Collections.singletonMap("order", "must not be null"));
+    private static final String INVALID_VALUE = "invalid value";
+
+    private final ObjectReader reader;
+    private final Validator validator;
+    private final ForkJoinPool pool;
+    private final int maxBatchSize;
+
+    public BatchOrderProcessor(@Qualifier("orderValidator") Validator validator,
+                               @Qualifier("orderJsonModule") Module jsonModule,
+                               @Qualifier("batchValidationPool") ForkJoinPool pool,
+                               @Value("${order.batch.max-size:10000}") int maxBatchSize) {
+        // the same configuration as the one of the Spring MVC message converter
+        this.reader = Jackson2ObjectMapperBuilder.json().modulesToInstall(jsonModule).build().readerFor(Order.class);
+        this.validator = validator;
+        this.pool = pool;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @param in - the JSON array of orders, or the orders separated by whitespace (NDJSON)
+     * @return the statuses of the orders, in the order of the input
+     *
+     * @throws HttpMessageNotReadableException if the input is not valid JSON
+     * @throws ResponseStatusException (413) if the batch is too large
+     */
+    public List<OrderStatus> process(InputStream in) throws IOException {
+        List<CompletableFuture<OrderStatus[]>> chunks = new ArrayList<>();
+        int count = 0;
+        try (MappingIterator<Order> iterator = reader.readValues(in)) {
+            List<Object> chunk = new ArrayList<>(CHUNK_SIZE); // the orders, or the statuses of unmapped ones
+            while (iterator.hasNextValue()) {
+                if (count++ == maxBatchSize) {
+                    throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                            "The batch must contain at most " + maxBatchSize + " orders");
+                }
+                try {
+                    chunk.add(iterator.nextValue());
+                } catch (JsonMappingException e) {
+                    // the iterator skips the rest of the order on the next call
+                    chunk.add(unmapped(e, iterator.getParser().getLastClearedToken()));
+                }
+                if (chunk.size() == CHUNK_SIZE) {
+                    chunks.add(submit(chunk));
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                chunks.add(submit(chunk));
+            }
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotReadableException(NOT_READABLE, e);
+        }
+
+        List<OrderStatus> statuses = new ArrayList<>(count);
+        try {
+            for (CompletableFuture<OrderStatus[]> chunk : chunks) {
+                statuses.addAll(Arrays.asList(chunk.get()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while validating the batch", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to validate the batch", e.getCause());
+        }
+        return statuses;
+    }
+
+    private CompletableFuture<OrderStatus[]> submit(List<Object> chunk) {
+        return CompletableFuture.supplyAsync(() -> validate(chunk), pool);
+    }
+
+    private OrderStatus[] validate(List<Object> chunk) {
+        OrderStatus[] statuses = new OrderStatus[chunk.size()];
+        for (int i = 0; i < statuses.length; i++) {
+            Object element = chunk.get(i);
+            statuses[i] = element instanceof OrderStatus ? (OrderStatus) element : validate((Order) element);
+        }
+        return statuses;
+    }
+
+    private OrderStatus validate(Order order) {
+        if (order == null) {
+            return NULL_ORDER;
+        }
+        BindingResult errors = new BeanPropertyBindingResult(order, "order");
+        validator.validate(order, errors);
+        return errors.hasErrors()
+                ? new OrderStatus(HttpStatus.BAD_REQUEST.value(), ValidationErrors.toMap(errors))
+                : OK;
+    }
+
+    /**
+     * @param token - the token the mapping stopped at
+     * @return the status of the order that cannot be mapped, the error is keyed by the path of the invalid field
+     * (the same format as the one of the validation errors), or by "order" if the order itself is not an object
+     */
+    private static OrderStatus unmapped(JsonMappingException error, JsonToken token) {
+        StringBuilder field = new StringBuilder();
+        for (JsonMappingException.Reference reference : error.getPath()) {
+            if (reference.getFieldName() != null) {
+                if (field.length() > 0) {
+                    field.append('.');
+                }
+                field.append(reference.getFieldName());
+            } else if (reference.getIndex() >= 0) {
+                field.append('[').append(reference.getIndex()).append(']');
+            }
+        }
+        if (field.length() == 0) {
+            return token == JsonToken.VALUE_NULL
+                    ? NULL_ORDER
+                    : new OrderStatus(HttpStatus.BAD_REQUEST.value(), Collections.singletonMap("order", INVALID_VALUE));
+        }
+        return new OrderStatus(HttpStatus.BAD_REQUEST.value(),
+                Collections.singletonMap(field.toString(), INVALID_VALUE));
+    }
+}
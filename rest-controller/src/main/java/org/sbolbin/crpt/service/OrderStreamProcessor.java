@@ -0,0 +1,219 @@
+package org.sbolbin.crpt.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.sbolbin.crpt.domain.Order;
+import org.sbolbin.crpt.domain.Product;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.BindException;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.MapBindingResult;
+import org.springframework.validation.ObjectError;
+import org.springframework.validation.Validator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Reads the order with the streaming JsonParser, one product at a time, validates each product as it arrives
+ * and writes the order with the JsonGenerator. Only the current product is kept in memory,
+ * so the memory use does not depend on the number of products.
+ * <p>
+ * The seller and the customer read before the products are validated before the first product is written.
+ * The output stops at the first error (the rest of the input is still read to report the errors),
+ * so the caller can discard the output written so far and report the errors instead.
+ * <p>
+ * The order validator is the one of POST /v1/order (see ApplicationConfig#orderValidator), the error fields are
+ * the same as reported by POST /v1/order; at most {@value #MAX_REPORTED_ERRORS} errors are reported.
+ */
+@Component
+public class OrderStreamProcessor {
+
+    static final int MAX_REPORTED_ERRORS = 100;
+
+    private static final String SELLER = "seller";
+    private static final String CUSTOMER = "customer";
+    private static final String PRODUCTS = "products";
+    private static final String NOT_READABLE = "The request body is not a valid JSON";
+    private static final List<Product> NOT_EMPTY = Collections.singletonList(null);
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    public OrderStreamProcessor(@Qualifier("orderValidator") Validator validator,
+                                @Qualifier("orderJsonModule") Module jsonModule) {
+        // the same configuration as the one of the Spring MVC message converter
+        this.objectMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(jsonModule).build();
+        this.validator = validator;
+    }
+
+    /**
+     * @param in - the JSON of the order
+     * @param out - the target of the validated order, written as the products are read; it is neither flushed
+     *            nor closed
+     *
+     * @throws BindException if the order is not valid (the output is incomplete then)
+     * @throws HttpMessageNotReadableException if the input is not a valid JSON of the order
+     */
+    public void process(InputStream in, OutputStream out) throws IOException, BindException {
+        BindingResult errors = new MapBindingResult(new HashMap<>(), "order");
+        try (JsonParser parser = objectMapper.getFactory().createParser(in);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            // the incomplete output is left as is, the caller decides whether it is sent
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new HttpMessageNotReadableException(NOT_READABLE);
+            }
+            generator.writeStartObject();
+            Header header = new Header();
+            int products = -1;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (SELLER.equals(field)) {
+                    header.seller = objectMapper.readValue(parser, String.class);
+                    header.sellerRead = true;
+                } else if (CUSTOMER.equals(field)) {
+                    header.customer = objectMapper.readValue(parser, String.class);
+                    header.customerRead = true;
+                } else if (PRODUCTS.equals(field) && products < 0 && value == JsonToken.START_ARRAY) {
+                    validateOrder(header, NOT_EMPTY, false, errors);
+                    if (!errors.hasErrors()) {
+                        header.write(generator, false); // the fields read so far precede the products
+                        generator.writeArrayFieldStart(PRODUCTS);
+                    }
+                    products = 0;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        Product product = objectMapper.readValue(parser, Product.class);
+                        validateProduct(product, products, errors);
+                        if (!errors.hasErrors()) {
+                            generator.writeObject(product);
+                        }
+                        products++;
+                    }
+                    if (!errors.hasErrors()) {
+                        generator.writeEndArray();
+                    }
+                } else if (PRODUCTS.equals(field) && value != JsonToken.VALUE_NULL) {
+                    throw new HttpMessageNotReadableException(NOT_READABLE);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            validateOrder(header, products < 0 ? null : products == 0 ? Collections.emptyList() : NOT_EMPTY,
+                    true, errors);
+            if (!errors.hasErrors()) {
+                header.write(generator, true);
+                if (products < 0) {
+                    generator.writeNullField(PRODUCTS);
+                }
+                generator.writeEndObject();
+            }
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotReadableException(NOT_READABLE, e);
+        }
+        if (errors.hasErrors()) {
+            throw new BindException(limit(errors));
+        }
+    }
+
+    /**
+     * Validates the fields of the order, the products are validated one by one by {@link #validateProduct}
+     *
+     * @param products - the products placeholder, NOT_EMPTY stands for the non-empty list
+     * @param complete - whether the whole order is read, otherwise only the fields read so far are validated
+     */
+    private void validateOrder(Header header, List<Product> products, boolean complete, BindingResult errors) {
+        BindingResult orderErrors = new MapBindingResult(new HashMap<>(), errors.getObjectName());
+        validator.validate(new Order(header.seller, header.customer, products), orderErrors);
+        for (ObjectError error : orderErrors.getAllErrors()) {
+            if (header.reportable(error instanceof FieldError ? ((FieldError) error).getField() : null, complete)) {
+                errors.addError(error);
+            }
+        }
+        header.validated(complete);
+    }
+
+    private void validateProduct(Product product, int index, BindingResult errors) {
+        if (product == null || errors.getErrorCount() >= MAX_REPORTED_ERRORS) {
+            return;
+        }
+        errors.pushNestedPath(PRODUCTS + "[" + index + "]");
+        validator.validate(product, errors);
+        errors.popNestedPath();
+    }
+
+    /**
+     * @return the first {@value #MAX_REPORTED_ERRORS} errors
+     */
+    private static BindingResult limit(BindingResult errors) {
+        if (errors.getErrorCount() <= MAX_REPORTED_ERRORS) {
+            return errors;
+        }
+        BindingResult limited = new MapBindingResult(new HashMap<>(), errors.getObjectName());
+        errors.getAllErrors().stream().limit(MAX_REPORTED_ERRORS).forEach(limited::addError);
+        return limited;
+    }
+
+    /**
+     * The scalar fields of the order, validated and written once
+     */
+    private static final class Header {
+        String seller;
+        String customer;
+        boolean sellerRead;
+        boolean customerRead;
+        boolean sellerValidated;
+        boolean customerValidated;
+        boolean sellerWritten;
+        boolean customerWritten;
+
+        /**
+         * @param field - the field of the order error, null for the error of the whole order
+         * @param complete - whether the whole order is read
+         * @return true if the error is reported now: the fields are reported once, as soon as they are read
+         */
+        boolean reportable(String field, boolean complete) {
+            if (SELLER.equals(field)) {
+                return !sellerValidated && (sellerRead || complete);
+            }
+            if (CUSTOMER.equals(field)) {
+                return !customerValidated && (customerRead || complete);
+            }
+            return complete;
+        }
+
+        void validated(boolean complete) {
+            sellerValidated |= sellerRead || complete;
+            customerValidated |= customerRead || complete;
+        }
+
+        /**
+         * @param missing - whether to write the fields absent in the input (as null)
+         */
+        void write(JsonGenerator generator, boolean missing) throws IOException {
+            if ((sellerRead || missing) && !sellerWritten) {
+                generator.writeStringField(SELLER, seller);
+                sellerWritten = true;
+            }
+            if ((customerRead || missing) && !customerWritten) {
+                generator.writeStringField(CUSTOMER, customer);
+                customerWritten = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.sbolbin.crpt.validation;
+
+import org.sbolbin.crpt.domain.Order;
+import org.sbolbin.crpt.domain.Product;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.DefaultMessageCodesResolver;
+import org.springframework.validation.Errors;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.MessageCodesResolver;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+
+import javax.validation.ConstraintViolation;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The hand-written validator of Order and Product: the checks of their Bean Validation constraints
+ * (@NotNull, @Size, @NotEmpty, @NotBlank) without the reflective constraint discovery and cascading.
+ * A valid order is validated without allocation.
+ * <p>
+ * The field paths and the messages are the ones reported by Bean Validation: the messages are resolved
+ * once from the constraint annotations by the given Bean Validation validator, which also validates
+ * the other classes.
+ */
+public class OrderValidator implements org.springframework.validation.Validator {
+
+    static final int SELLER_LENGTH = 9;
+    static final int CUSTOMER_LENGTH = 9;
+    static final int CODE_LENGTH = 13;
+
+    private static final String SELLER = "seller";
+    private static final String CUSTOMER = "customer";
+    private static final String PRODUCTS = "products";
+    private static final String CODE = "code";
+    private static final String NAME = "name";
+
+    private static final MessageCodesResolver MESSAGE_CODES_RESOLVER = new DefaultMessageCodesResolver();
+
+    private final SpringValidatorAdapter fallback;
+    private final String sellerRequired;
+    private final String sellerSize;
+    private final String customerRequired;
+    private final String customerSize;
+    private final String productsEmpty;
+    private final String codeRequired;
+    private final String codeSize;
+    private final String nameBlank;
+
+    /**
+     * @param fallback - the Bean Validation validator, resolves the messages and validates the other classes
+     */
+    public OrderValidator(SpringValidatorAdapter fallback) {
+        this.fallback = fallback;
+        this.sellerRequired = message(Order.class, SELLER, null);
+        this.sellerSize = message(Order.class, SELLER, "");
+        this.customerRequired = message(Order.class, CUSTOMER, null);
+        this.customerSize = message(Order.class, CUSTOMER, "");
+        this.productsEmpty = message(Order.class, PRODUCTS, Collections.emptyList());
+        this.codeRequired = message(Product.class, CODE, null);
+        this.codeSize = message(Product.class, CODE, "");
+        this.nameBlank = message(Product.class, NAME, null);
+    }
+
+    @Override
+    public boolean supports(Class<?> clazz) {
+        return Order.class == clazz || Product.class == clazz || fallback.supports(clazz);
+    }
+
+    @Override
+    public void validate(Object target, Errors errors) {
+        if (target instanceof Order) {
+            validateOrder((Order) target, errors);
+        } else if (target instanceof Product) {
+            validateProduct((Product) target, "", errors);
+        } else {
+            fallback.validate(target, errors);
+        }
+    }
+
+    private void validateOrder(Order order, Errors errors) {
+        validateLength(SELLER, order.getSeller(), SELLER_LENGTH, sellerRequired, sellerSize, errors);
+        validateLength(CUSTOMER, order.getCustomer(), CUSTOMER_LENGTH, customerRequired, customerSize, errors);
+
+        List<Product> products = order.getProducts();
+        if (products == null || products.isEmpty()) {
+            reject(PRODUCTS, products, "NotEmpty", productsEmpty, errors);
+            return;
+        }
+        for (int i = 0, size = products.size(); i < size; i++) {
+            Product product = products.get(i);
+            if (product != null && !isValid(product)) {
+                validateProduct(product, PRODUCTS + "[" + i + "].", errors);
+            }
+        }
+    }
+
+    private void validateProduct(Product product, String path, Errors errors) {
+        validateLength(path + CODE, product.getCode(), CODE_LENGTH, codeRequired, codeSize, errors);
+        if (isBlank(product.getName())) {
+            reject(path + NAME, product.getName(), "NotBlank", nameBlank, errors);
+        }
+    }
+
+    /**
+     * The path of the product is built only for the invalid product
+     */
+    private static boolean isValid(Product product) {
+        String code = product.getCode();
+        return code != null && code.length() == CODE_LENGTH && !isBlank(product.getName());
+    }
+
+    private static void validateLength(String field, String value, int length,
+                                       String requiredMessage, String sizeMessage, Errors errors) {
+        if (value == null) {
+            reject(field, null, "NotNull", requiredMessage, errors);
+        } else if (value.length() != length) {
+            reject(field, value, "Size", sizeMessage, errors);
+        }
+    }
+
+    /**
+     * The same as trim().isEmpty(), without the copy
+     */
+    private static boolean isBlank(String value) {
+        if (value == null) {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registers the error as SpringValidatorAdapter does: the field value is not read back by the property accessor
+     */
+    private static void reject(String field, Object rejectedValue, String code, String message, Errors errors) {
+        if (errors instanceof BindingResult) {
+            String path = errors.getNestedPath() + field;
+            String[] codes = MESSAGE_CODES_RESOLVER.resolveMessageCodes(code, errors.getObjectName(), path, null);
+            ((BindingResult) errors).addError(
+                    new FieldError(errors.getObjectName(), path, rejectedValue, false, codes, null, message));
+        } else {
+            errors.rejectValue(field, code, message);
+        }
+    }
+
+    private <T> String message(Class<T> type, String field, Object value) {
+        Set<ConstraintViolation<T>> violations = fallback.validateValue(type, field, value);
+        if (violations.size() != 1) {
+            throw new IllegalStateException("Unexpected constraints of " + type.getSimpleName() + "." + field
+                    + ", OrderValidator must be updated");
+        }
+        return violations.iterator().next().getMessage();
+    }
+}
@@ -1,6 +1,9 @@
 package org.sbolbin.crpt.controller;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,9 +13,12 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.sbolbin.crpt.config.ApplicationConfig;
 import org.sbolbin.crpt.domain.Order;
 import org.sbolbin.crpt.domain.Product;
+import org.sbolbin.crpt.idempotency.IdempotencyFilter;
+import org.sbolbin.crpt.metrics.MetricsFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -20,15 +26,30 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.validation.BindException;
 import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.util.NestedServletException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
@@ -38,6 +59,12 @@ class OrderControllerTest {
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
     private static final String PATH = "/v1/order";
+    private static final String STREAM_PATH = "/v1/order/stream";
+    private static final String ASYNC_PATH = "/v1/order/async";
+    private static final String BATCH_PATH = "/v1/orders/batch";
+    private static final String METRICS_PATH = "/metrics";
+    private static final String SMILE = "application/x-jackson-smile";
+    private static final String CBOR = "application/cbor";
     private static Order VALID;
     private static String VALID_PAYLOAD;
 
@@ -56,7 +83,10 @@ class OrderControllerTest {
 
     @BeforeEach
     public void beforeEach() {
-        mockMvc = MockMvcBuilders.webAppContextSetup(this.webApplicationContext).build();
+        mockMvc = MockMvcBuilders.webAppContextSetup(this.webApplicationContext)
+                .addFilter(webApplicationContext.getBean(MetricsFilter.class))
+                .addFilter(webApplicationContext.getBean(IdempotencyFilter.class), PATH)
+                .build();
     }
 
     @Test
@@ -109,6 +139,356 @@ class OrderControllerTest {
                 .andExpect(content().json(responseBody, true));
     }
 
+    @Test
+    @DisplayName("order repeated with the same Idempotency-Key - the stored response returned")
+    public void test_idempotentRepeated() throws Exception {
+        String key = UUID.randomUUID().toString();
+        mockMvc.perform(post(PATH)
+                        .header(IdempotencyFilter.IDEMPOTENCY_KEY, key)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(VALID_PAYLOAD))
+                .andExpect(status().isOk())
+                .andExpect(content().json(VALID_PAYLOAD, true));
+
+        mockMvc.perform(post(PATH)
+                        .header(IdempotencyFilter.IDEMPOTENCY_KEY, key)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(VALID_PAYLOAD))
+                .andExpect(status().isOk())
+                .andExpect(content().json(VALID_PAYLOAD, true));
+    }
+
+    @Test
+    @DisplayName("another order requested with the used Idempotency-Key - 422 returned")
+    public void test_idempotentKeyReused() throws Exception {
+        String key = UUID.randomUUID().toString();
+        mockMvc.perform(post(PATH)
+                        .header(IdempotencyFilter.IDEMPOTENCY_KEY, key)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(VALID_PAYLOAD))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post(PATH)
+                        .header(IdempotencyFilter.IDEMPOTENCY_KEY, key)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(orderToJson(VALID.withSeller("987654321"))))
+                .andExpect(status().is(HttpStatus.UNPROCESSABLE_ENTITY.value()))
+                .andExpect(content().json("{\"message\":\"The Idempotency-Key is used by another request\"}", true));
+    }
+
+    @Test
+    @DisplayName("invalid order repeated with the same Idempotency-Key - the errors not stored, validated again")
+    public void test_idempotentValidationFailed() throws Exception {
+        String key = UUID.randomUUID().toString();
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post(PATH)
+                            .header(IdempotencyFilter.IDEMPOTENCY_KEY, key)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(orderToJson(VALID.withSeller("123"))))
+                    .andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+                    .andExpect(content().json("{\"seller\": \"seller must contain exactly 9 symbols\"}", true));
+        }
+    }
+
+    @ParameterizedTest(name = "{index} {0}")
+    @DisplayName("valid order requested in binary format - the same order returned in the format")
+    @ValueSource(strings = {SMILE, CBOR})
+    public void test_binarySuccessfullyPassed(String format) throws Exception {
+        ObjectMapper binaryMapper = binaryMapper(format);
+
+        MvcResult result = mockMvc.perform(post(PATH)
+                        .contentType(format)
+                        .accept(format)
+                        .content(binaryMapper.writeValueAsBytes(VALID)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(format))
+                .andReturn();
+
+        assertEquals(VALID, binaryMapper.readValue(result.getResponse().getContentAsByteArray(), Order.class));
+    }
+
+    @ParameterizedTest(name = "{index} {0}")
+    @DisplayName("invalid order requested in binary format - the same errors returned in the format")
+    @ValueSource(strings = {SMILE, CBOR})
+    public void test_binaryValidationFailed(String format) throws Exception {
+        ObjectMapper binaryMapper = binaryMapper(format);
+
+        MvcResult result = mockMvc.perform(post(PATH)
+                        .contentType(format)
+                        .accept(format)
+                        .content(binaryMapper.writeValueAsBytes(new Order())))
+                .andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+                .andExpect(content().contentTypeCompatibleWith(format))
+                .andReturn();
+
+        Map<?, ?> expected = objectMapper.readValue("{" +
+                "\"customer\": \"customer must be specified\"," +
+                "\"products\": \"must not be empty\"," +
+                "\"seller\": \"seller must be specified\"" +
+                "}", Map.class);
+        assertEquals(expected, binaryMapper.readValue(result.getResponse().getContentAsByteArray(), Map.class));
+    }
+
+    @Test
+    @DisplayName("binary order requested without Accept - JSON returned")
+    public void test_binaryRequestJsonResponse() throws Exception {
+        mockMvc.perform(post(PATH)
+                        .contentType(SMILE)
+                        .content(binaryMapper(SMILE).writeValueAsBytes(VALID)))
+                .andExpect(status().isOk())
+                .andExpect(content().json(VALID_PAYLOAD, true));
+    }
+
+    @Test
+    @DisplayName("malformed binary body requested - 400 returned")
+    public void test_binaryInvalidBody() throws Exception {
+        mockMvc.perform(post(PATH)
+                        .contentType(CBOR)
+                        .content(new byte[]{(byte) 0xbf, 0x61}))
+                .andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+                .andExpect(content().json("{\"message\":\"The request body is not a valid JSON\"}", true));
+    }
+
+    @Test
+    @DisplayName("valid order streamed - the same order returned")
+    public void test_streamSuccessfullyPassed() throws Exception {
+        mockMvc.perform(post(STREAM_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(VALID_PAYLOAD))
+                .andExpect(status().isOk())
+                .andExpect(content().json(VALID_PAYLOAD, true));
+    }
+
+    @Test
+    @DisplayName("malformed body streamed - 400 returned")
+    public void test_streamInvalidBody() throws Exception {
+        mockMvc.perform(post(STREAM_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"seller\": \"123456789\", \"products\": [{\"code\": "))
+                .andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+                .andExpect(content().json("{\"message\":\"The request body is not a valid JSON\"}", true));
+    }
+
+    @Test
+    @DisplayName("valid huge order streamed - the same order returned")
+    public void test_streamHugeOrderPassed() throws Exception {
+        String payload = orderToJson(VALID.withProducts(hugeOrderProducts()));
+
+        mockMvc.perform(post(STREAM_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(payload))
+                .andExpect(status().isOk())
+                .andExpect(content().json(payload, true));
+    }
+
+    @Test
+    @DisplayName("huge order streamed with an invalid product before the response committed - the product reported")
+    public void test_streamHugeOrder() throws Exception {
+        List<Product> products = hugeOrderProducts();
+        products.set(50, new Product("shortCode", "milk"));
+        products.set(5_000, new Product("1234567890123", null));
+
+        mockMvc.perform(post(STREAM_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(orderToJson(VALID.withProducts(products))))
+                .andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+                .andExpect(content().json("{\n" +
+                        "    \"products[50].code\": \"product code must contain exactly 13 symbols\",\n" +
+                        "    \"products[5000].name\": \"product name must be specified\"\n" +
+                        "}", true));
+    }
+
+    @Test
+    @DisplayName("huge order streamed with an invalid product after the response committed - the response aborted")
+    public void test_streamHugeOrderCommitted() {
+        List<Product> products = hugeOrderProducts();
+        products.set(9_999, new Product("shortCode", "milk"));
+
+        NestedServletException error = assertThrows(NestedServletException.class, () -> mockMvc.perform(
+                post(STREAM_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(orderToJson(VALID.withProducts(products)))));
+        assertTrue(error.getCause() instanceof BindException);
+    }
+
+    @ParameterizedTest(name = "{index} Streamed order validation failed - {1}")
+    @DisplayName("Streamed order validation failed")
+    @MethodSource("validationFailedSource")
+    public void test_streamValidationFailed(Order payload, String responseBody) throws Exception {
+        mockMvc.perform(post(STREAM_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(orderToJson(payload)))
+                .andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+                .andExpect(content().json(responseBody, true));
+    }
+
+    @Test
+    @DisplayName("valid order requested asynchronously - the same order returned")
+    public void test_asyncSuccessfullyPassed() throws Exception {
+        MvcResult started = mockMvc.perform(post(ASYNC_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(VALID_PAYLOAD))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().json(VALID_PAYLOAD, true));
+    }
+
+    @ParameterizedTest(name = "{index} Asynchronous order validation failed - {1}")
+    @DisplayName("Asynchronous order validation failed")
+    @MethodSource("validationFailedSource")
+    public void test_asyncValidationFailed(Order payload, String responseBody) throws Exception {
+        MvcResult started = mockMvc.perform(post(ASYNC_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(orderToJson(payload)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+                .andExpect(content().json(responseBody, true));
+    }
+
+    @Test
+    @DisplayName("batch of orders requested as JSON array - status of each order returned")
+    public void test_batchArray() throws Exception {
+        String payload = objectMapper.writeValueAsString(Arrays.asList(VALID, VALID.withSeller("123"), VALID));
+
+        mockMvc.perform(post(BATCH_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(payload))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[" +
+                        "{\"status\": 200}," +
+                        "{\"status\": 400, \"errors\": {\"seller\": \"seller must contain exactly 9 symbols\"}}," +
+                        "{\"status\": 200}" +
+                        "]", true));
+    }
+
+    @Test
+    @DisplayName("batch of orders requested as NDJSON - status of each order returned")
+    public void test_batchNdjson() throws Exception {
+        String payload = VALID_PAYLOAD + "\n" + orderToJson(VALID.withProducts(null)) + "\n";
+
+        mockMvc.perform(post(BATCH_PATH)
+                        .contentType("application/x-ndjson")
+                        .content(payload))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[" +
+                        "{\"status\": 200}," +
+                        "{\"status\": 400, \"errors\": {\"products\": \"must not be empty\"}}" +
+                        "]", true));
+    }
+
+    @Test
+    @DisplayName("malformed batch requested - 400 returned")
+    public void test_batchInvalidBody() throws Exception {
+        mockMvc.perform(post(BATCH_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + VALID_PAYLOAD + ", {"))
+                .andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+                .andExpect(content().json("{\"message\":\"The request body is not a valid JSON\"}", true));
+    }
+
+    @Test
+    @DisplayName("batch with orders of wrong shape requested - each of them invalid, the others processed")
+    public void test_batchUnmappableOrders() throws Exception {
+        String products = "[{\"code\":\"1234567890123\",\"name\":\"milk\"}]";
+        String payload = "[" + VALID_PAYLOAD + "," +
+                VALID_PAYLOAD.replace(products, "5") + "," +
+                VALID_PAYLOAD.replace(products, "[{\"code\":{\"a\":[1]},\"name\":\"milk\"}]") + "," +
+                "7," +
+                VALID_PAYLOAD + "]";
+
+        mockMvc.perform(post(BATCH_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(payload))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[" +
+                        "{\"status\": 200}," +
+                        "{\"status\": 400, \"errors\": {\"products\": \"invalid value\"}}," +
+                        "{\"status\": 400, \"errors\": {\"products[0].code\": \"invalid value\"}}," +
+                        "{\"status\": 400, \"errors\": {\"order\": \"invalid value\"}}," +
+                        "{\"status\": 200}" +
+                        "]", true));
+    }
+
+    @Test
+    @DisplayName("batch with null order requested - null order invalid, the others processed")
+    public void test_batchNullOrder() throws Exception {
+        mockMvc.perform(post(BATCH_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[null," + VALID_PAYLOAD + "]"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[" +
+                        "{\"status\": 400, \"errors\": {\"order\": \"must not be null\"}}," +
+                        "{\"status\": 200}" +
+                        "]", true));
+    }
+
+    @Test
+    @DisplayName("valid order requested - request and each stage measured")
+    public void test_metricsStages() throws Exception {
+        String uri = "{uri=\"" + PATH + "\"";
+        String stages = "http_server_request_stage_seconds_count" + uri;
+        long read = metric(stages + ",stage=\"read\"}");
+        long validation = metric(stages + ",stage=\"validation\"}");
+        long handler = metric(stages + ",stage=\"handler\"}");
+        long write = metric(stages + ",stage=\"write\"}");
+        long requests = metric("http_server_request_duration_seconds_count" + uri + ",status=\"2xx\"}");
+        long requestSizes = metric("http_server_request_size_bytes_count" + uri + "}");
+        long responseSizes = metric("http_server_response_size_bytes_count" + uri + "}");
+
+        mockMvc.perform(post(PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(VALID_PAYLOAD))
+                .andExpect(status().isOk());
+
+        assertEquals(read + 1, metric(stages + ",stage=\"read\"}"));
+        assertEquals(validation + 1, metric(stages + ",stage=\"validation\"}"));
+        assertEquals(handler + 1, metric(stages + ",stage=\"handler\"}"));
+        assertEquals(write + 1, metric(stages + ",stage=\"write\"}"));
+        assertEquals(requests + 1, metric("http_server_request_duration_seconds_count" + uri + ",status=\"2xx\"}"));
+        assertEquals(requestSizes + 1, metric("http_server_request_size_bytes_count" + uri + "}"));
+        assertEquals(responseSizes + 1, metric("http_server_response_size_bytes_count" + uri + "}"));
+    }
+
+    @Test
+    @DisplayName("malformed body requested - error branch counted, read stage not measured")
+    public void test_metricsErrorBranch() throws Exception {
+        String read = "http_server_request_stage_seconds_count{uri=\"" + PATH + "\",stage=\"read\"}";
+        String notReadable = "http_server_errors_total{branch=\"not_readable\"}";
+        long readCount = metric(read);
+        long notReadableCount = metric(notReadable);
+
+        mockMvc.perform(post(PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("something wrong"))
+                .andExpect(status().is(HttpStatus.BAD_REQUEST.value()));
+
+        assertEquals(readCount, metric(read));
+        assertEquals(notReadableCount + 1, metric(notReadable));
+    }
+
+    @Test
+    @DisplayName("valid order requested asynchronously - request measured once completed")
+    public void test_metricsAsync() throws Exception {
+        String requests = "http_server_request_duration_seconds_count{uri=\"" + ASYNC_PATH + "\",status=\"2xx\"}";
+        long count = metric(requests);
+
+        MvcResult started = mockMvc.perform(post(ASYNC_PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(VALID_PAYLOAD))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk());
+
+        assertEquals(count + 1, metric(requests));
+    }
+
     public static Stream<Arguments> validationFailedSource() {
         return Stream.of(
                 Arguments.of(new Order(), "{\n" +
@@ -143,6 +523,35 @@ class OrderControllerTest {
         );
     }
 
+    private static ObjectMapper binaryMapper(String format) {
+        JsonFactory factory = SMILE.equals(format) ? new SmileFactory() : new CBORFactory();
+        return new ObjectMapper(factory);
+    }
+
+    /**
+     * @return the value of the series exposed by /metrics, 0 if not exposed yet
+     */
+    private long metric(String series) throws Exception {
+        String metrics = mockMvc.perform(get(METRICS_PATH))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+                .andReturn().getResponse().getContentAsString();
+        for (String line : metrics.split("\n")) {
+            if (line.startsWith(series + " ")) {
+                return Long.parseLong(line.substring(series.length() + 1));
+            }
+        }
+        return 0;
+    }
+
+    private static List<Product> hugeOrderProducts() {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            products.add(new Product(String.format("%013d", i), "product " + i));
+        }
+        return products;
+    }
+
     @SneakyThrows
     private static String orderToJson(Order order) {
         return objectMapper.writeValueAsString(order);
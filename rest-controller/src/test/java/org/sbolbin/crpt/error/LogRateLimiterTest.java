@@ -0,0 +1,41 @@
+package org.sbolbin.crpt.error;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogRateLimiterTest {
+
+    @Test
+    @DisplayName("events within the interval - suppressed and counted")
+    public void test_1() {
+        //setup
+        LogRateLimiter limiter = new LogRateLimiter(1, TimeUnit.HOURS);
+
+        //act & verify
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.takeSuppressed());
+        assertEquals(0, limiter.takeSuppressed());
+    }
+
+    @Test
+    @DisplayName("events after the interval - allowed again")
+    public void test_2() throws Exception {
+        //setup
+        LogRateLimiter limiter = new LogRateLimiter(10, TimeUnit.MILLISECONDS);
+
+        //act
+        limiter.tryAcquire();
+        Thread.sleep(20);
+
+        //verify
+        assertTrue(limiter.tryAcquire());
+    }
+}
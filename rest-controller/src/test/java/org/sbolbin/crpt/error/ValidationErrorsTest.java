@@ -0,0 +1,40 @@
+package org.sbolbin.crpt.error;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.MapBindingResult;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ValidationErrorsTest {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("errors written to the generator - the same JSON as the map of errors")
+    public void test_write() throws Exception {
+        //setup
+        BindingResult errors = new MapBindingResult(new HashMap<>(), "order");
+        errors.addError(new FieldError("order", "seller", "first"));
+        errors.addError(new FieldError("order", "products[1].code", "code"));
+        errors.addError(new FieldError("order", "customer", "customer"));
+        errors.addError(new FieldError("order", "seller", "last"));
+        errors.addError(new FieldError("order", "products[0].name", "name"));
+        StringWriter out = new StringWriter();
+
+        //act
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            ValidationErrors.write(errors, generator);
+        }
+
+        //verify
+        assertEquals(objectMapper.writeValueAsString(ValidationErrors.toMap(errors)), out.toString());
+    }
+}
@@ -0,0 +1,173 @@
+package org.sbolbin.crpt.idempotency;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IdempotencyFilterTest {
+
+    private final IdempotencyFilter filter = new IdempotencyFilter(1024 * 1024, 60);
+
+    @Test
+    @DisplayName("request repeated with the same key - processed once, the stored response returned")
+    public void test_1() throws Exception {
+        //setup
+        AtomicInteger calls = new AtomicInteger();
+        FilterChain chain = respond(calls, HttpServletResponse.SC_OK);
+
+        //act
+        MockHttpServletResponse first = perform("key-1", chain);
+        MockHttpServletResponse second = perform("key-1", chain);
+
+        //verify
+        assertEquals(1, calls.get());
+        assertEquals(HttpServletResponse.SC_OK, second.getStatus());
+        assertEquals("application/json", second.getContentType());
+        assertEquals(first.getContentAsString(), second.getContentAsString());
+        assertEquals("{\"call\":1}", second.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("concurrent requests with the same key - coalesced onto one processing")
+    public void test_2() throws Exception {
+        //setup
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain chain = (request, response) -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(calls, HttpServletResponse.SC_OK).doFilter(request, response);
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        //act
+        Future<MockHttpServletResponse> first = executor.submit(() -> perform("key-2", chain));
+        started.await();
+        Future<MockHttpServletResponse> second = executor.submit(() -> perform("key-2", chain));
+        Thread.sleep(100);
+        release.countDown();
+
+        //verify
+        assertEquals("{\"call\":1}", first.get(5, TimeUnit.SECONDS).getContentAsString());
+        assertEquals("{\"call\":1}", second.get(5, TimeUnit.SECONDS).getContentAsString());
+        assertEquals(1, calls.get());
+        executor.shutdown();
+    }
+
+    @Test
+    @DisplayName("server error - the response is not stored, the retry processed again")
+    public void test_3() throws Exception {
+        //setup
+        AtomicInteger calls = new AtomicInteger();
+        FilterChain chain = respond(calls, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+
+        //act
+        MockHttpServletResponse first = perform("key-3", chain);
+        MockHttpServletResponse second = perform("key-3", chain);
+
+        //verify
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, first.getStatus());
+        assertEquals("{\"call\":2}", second.getContentAsString());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    @DisplayName("requests without the key - processed every time")
+    public void test_4() throws Exception {
+        //setup
+        AtomicInteger calls = new AtomicInteger();
+        FilterChain chain = respond(calls, HttpServletResponse.SC_OK);
+
+        //act
+        perform(null, chain);
+        perform(null, chain);
+
+        //verify
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    @DisplayName("retry after a client error with the fixed body - the response is not stored, the retry processed")
+    public void test_5() throws Exception {
+        //setup
+        AtomicInteger calls = new AtomicInteger();
+        FilterChain chain = (request, response) -> {
+            byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+            int status = "invalid".equals(new String(body, StandardCharsets.UTF_8))
+                    ? HttpServletResponse.SC_BAD_REQUEST
+                    : HttpServletResponse.SC_OK;
+            respond(calls, status).doFilter(request, response);
+        };
+
+        //act
+        MockHttpServletResponse first = perform("key-5", "invalid", chain);
+        MockHttpServletResponse second = perform("key-5", "valid", chain);
+        MockHttpServletResponse third = perform("key-5", "valid", chain);
+
+        //verify
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, first.getStatus());
+        assertEquals(HttpServletResponse.SC_OK, second.getStatus());
+        assertEquals("{\"call\":2}", third.getContentAsString());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    @DisplayName("key reused with another body - 422 returned, the request not processed")
+    public void test_6() throws Exception {
+        //setup
+        AtomicInteger calls = new AtomicInteger();
+        FilterChain chain = respond(calls, HttpServletResponse.SC_OK);
+
+        //act
+        perform("key-6", "order 1", chain);
+        MockHttpServletResponse reused = perform("key-6", "order 2", chain);
+
+        //verify
+        assertEquals(422, reused.getStatus());
+        assertEquals("{\"message\":\"The Idempotency-Key is used by another request\"}", reused.getContentAsString());
+        assertEquals(1, calls.get());
+    }
+
+    private MockHttpServletResponse perform(String key, FilterChain chain) throws Exception {
+        return perform(key, "", chain);
+    }
+
+    private MockHttpServletResponse perform(String key, String body, FilterChain chain) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/v1/order");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        if (key != null) {
+            request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY, key);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static FilterChain respond(AtomicInteger calls, int status) {
+        return (request, response) -> {
+            HttpServletResponse httpResponse = (HttpServletResponse) response;
+            httpResponse.setStatus(status);
+            httpResponse.setContentType("application/json");
+            httpResponse.getOutputStream().write(("{\"call\":" + calls.incrementAndGet() + "}").getBytes());
+        };
+    }
+}
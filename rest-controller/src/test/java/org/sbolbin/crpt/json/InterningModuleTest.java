@@ -0,0 +1,77 @@
+package org.sbolbin.crpt.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.sbolbin.crpt.domain.Order;
+import org.sbolbin.crpt.domain.Product;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class InterningModuleTest {
+
+    private static final Order ORDER = new Order("123456789", "234567890", Arrays.asList(
+            new Product("1234567890123", "milk"),
+            new Product("1234567890123", "milk"),
+            new Product("0000000000001", null)));
+
+    @Test
+    @DisplayName("repeated codes and names deserialized - the same strings shared, the output unchanged")
+    public void test_interned() throws Exception {
+        //setup
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(new InterningModule(1024)).build();
+        String json = objectMapper.writeValueAsString(ORDER);
+
+        //act
+        Order first = objectMapper.readValue(json, Order.class);
+        Order second = objectMapper.readValue(json, Order.class);
+
+        //verify
+        assertEquals(ORDER, first);
+        assertEquals(json, objectMapper.writeValueAsString(first));
+        assertSame(first.getProducts().get(0).getCode(), first.getProducts().get(1).getCode());
+        assertSame(first.getProducts().get(0).getName(), second.getProducts().get(1).getName());
+        assertNull(second.getProducts().get(2).getName());
+    }
+
+    @Test
+    @DisplayName("zero capacity - the strings are not interned")
+    public void test_disabled() throws Exception {
+        //setup
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(new InterningModule(0)).build();
+        String json = objectMapper.writeValueAsString(ORDER);
+
+        //act
+        Order order = objectMapper.readValue(json, Order.class);
+
+        //verify
+        assertEquals(ORDER, order);
+        assertNotSame(order.getProducts().get(0).getCode(), order.getProducts().get(1).getCode());
+    }
+
+    @Test
+    @DisplayName("interner - the same instance for the same characters, the long strings not interned")
+    public void test_interner() {
+        //setup
+        StringInterner interner = new StringInterner(16, 8);
+        char[] buffer = "xx1234567890123xx".toCharArray();
+
+        //act
+        String first = interner.intern(buffer, 2, 13);
+        String second = interner.intern("1234567890123".toCharArray(), 0, 13);
+        String shortFirst = interner.intern(buffer, 2, 4);
+        String shortSecond = interner.intern("1234".toCharArray(), 0, 4);
+
+        //verify
+        assertEquals("1234567890123", first);
+        assertNotSame(first, second);
+        assertEquals("1234", shortFirst);
+        assertSame(shortFirst, shortSecond);
+    }
+}
@@ -0,0 +1,52 @@
+package org.sbolbin.crpt.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramTest {
+
+    @Test
+    @DisplayName("values recorded - cumulative buckets, sum and count written")
+    public void test_1() {
+        //setup
+        Histogram histogram = new Histogram(new long[]{10, 100}, 1);
+
+        //act
+        histogram.record(5);
+        histogram.record(10);
+        histogram.record(50);
+        histogram.record(1000);
+        StringBuilder out = new StringBuilder();
+        histogram.write(out, "size", "uri=\"/v1/order\"");
+
+        //verify
+        assertEquals("size_bucket{uri=\"/v1/order\",le=\"10\"} 2\n" +
+                "size_bucket{uri=\"/v1/order\",le=\"100\"} 3\n" +
+                "size_bucket{uri=\"/v1/order\",le=\"+Inf\"} 4\n" +
+                "size_sum{uri=\"/v1/order\"} 1065\n" +
+                "size_count{uri=\"/v1/order\"} 4\n", out.toString());
+    }
+
+    @Test
+    @DisplayName("latency in nanoseconds recorded - written in seconds")
+    public void test_2() {
+        //setup
+        Histogram histogram = Histogram.latency();
+
+        //act
+        histogram.record(1_500_000);
+        StringBuilder out = new StringBuilder();
+        histogram.write(out, "latency", "");
+
+        //verify
+        String written = out.toString();
+        assertEquals(1, histogram.count());
+        assertTrue(written.contains("latency_bucket{le=\"0.001\"} 0\n"));
+        assertTrue(written.contains("latency_bucket{le=\"0.0025\"} 1\n"));
+        assertTrue(written.contains("latency_sum 0.0015\n"));
+        assertTrue(written.contains("latency_count 1\n"));
+    }
+}
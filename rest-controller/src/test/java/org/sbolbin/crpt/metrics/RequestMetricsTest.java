@@ -0,0 +1,53 @@
+package org.sbolbin.crpt.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestMetricsTest {
+
+    @Test
+    @DisplayName("request recorded - only the recorded series written")
+    public void test_1() {
+        //setup
+        RequestMetrics metrics = new RequestMetrics();
+
+        //act
+        metrics.endpoint("/v1/order").recordRequest(200, 1_000_000, 100, -1);
+        metrics.endpoint("/v1/order").recordStage(Stage.READ, 1_000);
+        String scraped = metrics.scrape();
+
+        //verify
+        assertTrue(scraped.contains("# TYPE http_server_request_duration_seconds histogram\n"));
+        assertTrue(scraped.contains("http_server_request_duration_seconds_count{uri=\"/v1/order\",status=\"2xx\"} 1\n"));
+        assertFalse(scraped.contains("status=\"4xx\""));
+        assertTrue(scraped.contains("http_server_request_stage_seconds_count{uri=\"/v1/order\",stage=\"read\"} 1\n"));
+        assertFalse(scraped.contains("stage=\"write\""));
+        assertTrue(scraped.contains("http_server_request_size_bytes_count{uri=\"/v1/order\"} 1\n"));
+        assertFalse(scraped.contains("http_server_response_size_bytes_count"));
+    }
+
+    @Test
+    @DisplayName("errors counted - counter by branch written, the request without handler reported as none")
+    public void test_2() {
+        //setup
+        RequestMetrics metrics = new RequestMetrics();
+
+        //act
+        metrics.errorCounter("not_found").increment();
+        metrics.errorCounter("not_found").increment();
+        metrics.errorCounter("internal");
+        metrics.endpoint(null).recordRequest(404, 1_000, -1, 20);
+        String scraped = metrics.scrape();
+
+        //verify
+        assertSame(metrics.endpoint(null), metrics.endpoint(RequestMetrics.NO_HANDLER));
+        assertTrue(scraped.contains("# TYPE http_server_errors_total counter\n"));
+        assertTrue(scraped.contains("http_server_errors_total{branch=\"internal\"} 0\n"
+                + "http_server_errors_total{branch=\"not_found\"} 2\n"));
+        assertTrue(scraped.contains("http_server_request_duration_seconds_count{uri=\"none\",status=\"4xx\"} 1\n"));
+    }
+}
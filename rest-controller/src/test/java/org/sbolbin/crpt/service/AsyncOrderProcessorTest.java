@@ -0,0 +1,72 @@
+package org.sbolbin.crpt.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.sbolbin.crpt.domain.Order;
+import org.sbolbin.crpt.domain.Product;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AsyncOrderProcessorTest {
+
+    private static final Order VALID = new Order("123456789", "234567890",
+            Collections.singletonList(new Product("1234567890123", "milk")));
+
+    private final LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+
+    AsyncOrderProcessorTest() {
+        validator.afterPropertiesSet();
+    }
+
+    @Test
+    @DisplayName("too many orders in flight - order rejected")
+    public void test_loadShedding() {
+        //setup
+        List<Runnable> queued = new ArrayList<>();
+        AsyncOrderProcessor processor = new AsyncOrderProcessor(queued::add, validator, 1, 1000);
+        processor.process(VALID);
+
+        //act & verify
+        assertThrows(RejectedExecutionException.class, () -> processor.process(VALID));
+        queued.get(0).run();
+        processor.process(VALID);
+        assertEquals(2, queued.size());
+    }
+
+    @Test
+    @DisplayName("executor saturated - order rejected and the permit released")
+    public void test_executorRejected() {
+        //setup
+        AtomicInteger attempts = new AtomicInteger();
+        Executor rejecting = task -> {
+            attempts.incrementAndGet();
+            throw new RejectedExecutionException();
+        };
+        AsyncOrderProcessor processor = new AsyncOrderProcessor(rejecting, validator, 1, 1000);
+
+        //act & verify
+        assertThrows(RejectedExecutionException.class, () -> processor.process(VALID));
+        assertThrows(RejectedExecutionException.class, () -> processor.process(VALID));
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    @DisplayName("valid order - completed with the order")
+    public void test_processed() {
+        //act
+        DeferredResult<Order> result = new AsyncOrderProcessor(Runnable::run, validator, 1, 1000).process(VALID);
+
+        //verify
+        assertEquals(VALID, result.getResult());
+    }
+}
@@ -0,0 +1,117 @@
+package org.sbolbin.crpt.validation;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.sbolbin.crpt.domain.Order;
+import org.sbolbin.crpt.domain.Product;
+import org.sbolbin.crpt.error.ValidationErrors;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.Validator;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderValidatorTest {
+
+    private static final Product VALID_PRODUCT = new Product("1234567890123", "milk");
+    private static final Order VALID = new Order("123456789", "234567890", Collections.singletonList(VALID_PRODUCT));
+
+    private static final LocalValidatorFactoryBean beanValidator = new LocalValidatorFactoryBean();
+
+    static {
+        beanValidator.afterPropertiesSet();
+    }
+
+    private final OrderValidator validator = new OrderValidator(beanValidator);
+
+    @Test
+    @DisplayName("valid order - no errors")
+    public void test_valid() {
+        //act
+        BindingResult errors = validate(validator, VALID);
+
+        //verify
+        assertFalse(errors.hasErrors());
+    }
+
+    @ParameterizedTest(name = "{index} {0}")
+    @DisplayName("invalid order - the same errors as reported by Bean Validation")
+    @MethodSource("ordersSource")
+    public void test_sameAsBeanValidation(Order order) {
+        //act
+        Map<String, String> expected = ValidationErrors.toMap(validate(beanValidator, order));
+        Map<String, String> actual = ValidationErrors.toMap(validate(validator, order));
+
+        //verify
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    @DisplayName("invalid product validated in the nested path - the same errors as reported by Bean Validation")
+    public void test_nestedProduct() {
+        //setup
+        Product product = new Product(null, " ");
+        BindingResult expected = new BeanPropertyBindingResult(VALID, "order");
+        BindingResult actual = new BeanPropertyBindingResult(VALID, "order");
+
+        //act
+        expected.pushNestedPath("products[0]");
+        beanValidator.validate(product, expected);
+        actual.pushNestedPath("products[0]");
+        validator.validate(product, actual);
+
+        //verify
+        assertEquals(ValidationErrors.toMap(expected), ValidationErrors.toMap(actual));
+        assertEquals(2, actual.getErrorCount());
+    }
+
+    @Test
+    @DisplayName("other class - validated by Bean Validation")
+    public void test_otherClass() {
+        //act & verify
+        assertTrue(validator.supports(Object.class));
+        assertFalse(validate(validator, "string").hasErrors());
+    }
+
+    public static Stream<Order> ordersSource() {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            products.add(i % 3 == 0 ? new Product("short" + i, "") : VALID_PRODUCT);
+        }
+        return Stream.of(
+                new Order(),
+                VALID.withSeller("123"),
+                VALID.withSeller(""),
+                VALID.withSeller("123456789tooLong"),
+                VALID.withCustomer(null),
+                VALID.withCustomer("123456"),
+                VALID.withProducts(null),
+                VALID.withProducts(Collections.emptyList()),
+                VALID.withProducts(Collections.singletonList(null)),
+                VALID.withProducts(Collections.singletonList(new Product(null, null))),
+                VALID.withProducts(Collections.singletonList(new Product("shortCode", "milk"))),
+                VALID.withProducts(Collections.singletonList(new Product("1234567890VeryLongCode", "milk"))),
+                VALID.withProducts(Collections.singletonList(new Product("1234567890123", " \t\n"))),
+                VALID.withProducts(Arrays.asList(VALID_PRODUCT, null, new Product("1234567890123", ""))),
+                new Order("1", "2", products)
+        );
+    }
+
+    private static BindingResult validate(Validator validator, Object target) {
+        BindingResult errors = new BeanPropertyBindingResult(target, "order");
+        validator.validate(target, errors);
+        return errors;
+    }
+}